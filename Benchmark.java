@@ -0,0 +1,222 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+public class Benchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 10;
+    private static final long ITERATION_NANOS = 200000000L;
+    private static final long SEED = 42L;
+
+    // The sum of every case's results, written
+    // after each iteration. Being volatile, it
+    // can't be optimised away, so neither can
+    // the work it sums.
+    private static volatile long sink;
+
+    private Benchmark() {}
+
+    /**
+     * The program's entry point.
+     * Runs every benchmark and prints the
+     * mean and standard deviation of the
+     * time per operation for each.
+     *
+     * @param args The command-line arguments
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        new Benchmark().run();
+    }
+
+    private void run() {
+        int[] sizes = {10, 100, 1000};
+        double[] densities = {0.1, 0.5, 0.8};
+        for(int size : sizes) {
+            for(double density : densities) {
+                final Minesweeper m = new Minesweeper(
+                    size, (int)(size * size * density), SEED);
+                measure("reset " + size + "x" + size + " @ " + density,
+                    new Case() {
+                        public long run() {
+                            m.reset();
+                            return m.getSeed();
+                        }
+                    });
+            }
+        }
+
+        // With no mines, one reveal floods the
+        // whole board: the worst case for reveal
+        final Minesweeper open = new Minesweeper(1000, 0, SEED);
+        measure("reset + reveal 1000x1000 open board", new Case() {
+            public long run() {
+                open.reset(SEED);
+                return open.reveal(500, 500).size();
+            }
+        });
+
+        final Minesweeper parallel = new Minesweeper(1000, 0, SEED);
+        parallel.setFloodPool(
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors()));
+        measure("reset + parallel reveal 1000x1000 open board", new Case() {
+            public long run() {
+                parallel.reset(SEED);
+                return parallel.reveal(500, 500).size();
+            }
+        });
+
+        final LargeMinesweeper large = new LargeMinesweeper(1000, 1000, 0, SEED);
+        measure("LargeMinesweeper reset + reveal 1000x1000 open board",
+            new Case() {
+                public long run() {
+                    large.reset(SEED);
+                    return large.reveal(500, 500);
+                }
+            });
+
+        final Minesweeper sparse = new Minesweeper(1000, 100000, SEED);
+        measure("getNumAdjacentMines 1000x1000 full sweep", new Case() {
+            public long run() {
+                long total = 0;
+                for(int y = 0; y < sparse.getSize(); y++) {
+                    for(int x = 0; x < sparse.getSize(); x++) {
+                        total += sparse.getNumAdjacentMines(x, y);
+                    }
+                }
+                return total;
+            }
+        });
+        final byte[] state = new byte[1000 * 1000];
+        sparse.reveal(500, 500);
+        measure("exportState 1000x1000 mostly hidden", new Case() {
+            public long run() {
+                sparse.exportState(state);
+                return state[500500];
+            }
+        });
+        // Left fully revealed by its benchmark
+        measure("exportState 1000x1000 fully revealed", new Case() {
+            public long run() {
+                open.exportState(state);
+                return state[500500];
+            }
+        });
+        measure("isRevealed/isMine/isFlag/getNumAdjacentMines 1000x1000 sweep",
+            new Case() {
+                public long run() {
+                    long total = 0;
+                    for(int y = 0; y < 1000; y++) {
+                        for(int x = 0; x < 1000; x++) {
+                            if(sparse.isRevealed(x, y)) {
+                                total += sparse.isMine(x, y)
+                                    ? Minesweeper.REVEALED_MINE
+                                    : sparse.getNumAdjacentMines(x, y);
+                            } else {
+                                total += sparse.isFlag(x, y)
+                                    ? Minesweeper.FLAGGED
+                                    : Minesweeper.HIDDEN;
+                            }
+                        }
+                    }
+                    return total;
+                }
+            });
+        measure("hasRevealedMine 1000x1000", new Case() {
+            public long run() {
+                return sparse.hasRevealedMine() ? 1 : 0;
+            }
+        });
+
+        final MineModel model = new MineModel(new Minesweeper(40, 250, SEED));
+        final BoardView view = new BoardView(model);
+        measure("BoardView.boardReset 40x40", new Case() {
+            public long run() {
+                view.boardReset(model);
+                return 0;
+            }
+        });
+        final CellList one = new CellList(1);
+        one.add(0);
+        measure("BoardView.flagChanged 40x40 one flag", new Case() {
+            public long run() {
+                view.flagChanged(model, one);
+                return 0;
+            }
+        });
+
+        view.setSize(view.getPreferredSize());
+        view.doLayout();
+        final java.awt.Graphics g = new java.awt.image.BufferedImage(
+            view.getWidth(), view.getHeight(),
+            java.awt.image.BufferedImage.TYPE_INT_RGB).createGraphics();
+        measure("BoardView.paint 40x40", new Case() {
+            public long run() {
+                view.paint(g);
+                return 0;
+            }
+        });
+    }
+
+    /**
+     * Runs the given case for the warmup
+     * iterations, then the measured ones,
+     * and prints the results.
+     *
+     * @param name The name of the case
+     * @param c The case to run
+     */
+    private void measure(String name, Case c) {
+        for(int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration(c);
+        }
+        double[] results = new double[MEASURED_ITERATIONS];
+        double mean = 0;
+        for(int i = 0; i < results.length; i++) {
+            results[i] = iteration(c);
+            mean += results[i];
+        }
+        mean /= results.length;
+        double variance = 0;
+        for(double result : results) {
+            variance += (result - mean) * (result - mean);
+        }
+        double sd = Math.sqrt(variance / (results.length - 1));
+        System.out.printf("%-45s %14.1f +- %10.1f ns/op%n", name, mean, sd);
+    }
+
+    /**
+     * Runs the given case repeatedly for
+     * one iteration's worth of time.
+     *
+     * @param c The case to run
+     *
+     * @return the mean time per
+     *         operation in nanoseconds
+     */
+    private double iteration(Case c) {
+        long ops = 0;
+        long sum = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            sum += c.run();
+            ops++;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < ITERATION_NANOS);
+        sink += sum;
+        return (double)elapsed / ops;
+    }
+
+    /**
+     * A single operation to be timed.
+     */
+    private abstract static class Case {
+        /**
+         * Runs the operation once.
+         *
+         * @return a value depending on the
+         *         work done, so it can't be
+         *         optimised away
+         */
+        public abstract long run();
+    }
+}
@@ -0,0 +1,207 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+public class BitPlane {
+    // Bits per chunk. Each chunk is its own buffer,
+    // as a single buffer can't hold more than 2GB.
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_BITS = 1L << CHUNK_SHIFT;
+    private static final int CHUNK_WORDS = (int)(CHUNK_BITS >>> 6);
+
+    private long length;
+    private LongBuffer[] chunks;
+
+    /**
+     * Creates a BitPlane over the given chunks.
+     *
+     * @param length The number of bits
+     * @param chunks The chunks, every one but the
+     *               last holding CHUNK_BITS bits
+     */
+    private BitPlane(long length, LongBuffer[] chunks) {
+        this.length = length;
+        this.chunks = chunks;
+    }
+
+    /**
+     * Creates a BitPlane of the given number of
+     * bits, all clear, in direct buffers outside
+     * the Java heap.
+     *
+     * @param length The number of bits
+     *
+     * @return the BitPlane
+     */
+    public static BitPlane allocate(long length) {
+        LongBuffer[] chunks = new LongBuffer[numChunks(length)];
+        for(int c = 0; c < chunks.length; c++) {
+            chunks[c] = ByteBuffer.allocateDirect(chunkWords(length, c) * 8)
+                .order(ByteOrder.nativeOrder())
+                .asLongBuffer();
+        }
+        return new BitPlane(length, chunks);
+    }
+
+    /**
+     * Creates a BitPlane of the given number of
+     * bits mapped onto the given file, from the
+     * given position, so the operating system
+     * pages it in and out as it is used. The
+     * bits start as whatever the file holds:
+     * clear where it is new.
+     *
+     * @param channel The file, open to read and write
+     * @param position Where in the file the bits start
+     * @param length The number of bits
+     *
+     * @return the BitPlane
+     *
+     * @throws IOException if mapping the file failed
+     */
+    public static BitPlane map(FileChannel channel, long position, long length)
+            throws IOException {
+        LongBuffer[] chunks = new LongBuffer[numChunks(length)];
+        for(int c = 0; c < chunks.length; c++) {
+            chunks[c] = channel
+                .map(FileChannel.MapMode.READ_WRITE,
+                     position + (long)c * CHUNK_WORDS * 8,
+                     chunkWords(length, c) * 8L)
+                .order(ByteOrder.nativeOrder())
+                .asLongBuffer();
+        }
+        return new BitPlane(length, chunks);
+    }
+
+    /**
+     * Returns the number of bytes a BitPlane
+     * of the given number of bits takes up.
+     *
+     * @param length The number of bits
+     *
+     * @return the number of bytes
+     */
+    public static long getByteSize(long length) {
+        return ((length + 63) >>> 6) * 8;
+    }
+
+    /**
+     * Returns the number of bits.
+     *
+     * @return the number of bits
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Returns true iff the given bit is set.
+     *
+     * @param i The bit's index
+     *
+     * @return true iff the bit is set
+     */
+    public boolean get(long i) {
+        return (getWord(i >>> 6) & (1L << i)) != 0;
+    }
+
+    /**
+     * Sets or clears the given bit.
+     *
+     * @param i The bit's index
+     * @param value True to set it,
+     *              false to clear it
+     */
+    public void set(long i, boolean value) {
+        long word = getWord(i >>> 6);
+        setWord(i >>> 6, value ? word | (1L << i) : word & ~(1L << i));
+    }
+
+    /**
+     * Returns the w'th word of 64 bits,
+     * holding bits 64*w to 64*w + 63.
+     *
+     * @param w The word's index
+     *
+     * @return the word
+     */
+    public long getWord(long w) {
+        return chunks[(int)(w >>> (CHUNK_SHIFT - 6))]
+            .get((int)w & (CHUNK_WORDS - 1));
+    }
+
+    /**
+     * Sets every bit, or clears every bit.
+     *
+     * @param value True to set them,
+     *              false to clear them
+     */
+    public void fill(boolean value) {
+        long numWords = (length + 63) >>> 6;
+        for(long w = 0; w < numWords; w++) {
+            setWord(w, value ? -1L : 0L);
+        }
+        if(value && (length & 63) != 0) {
+            // Keep the bits past the end clear
+            setWord(numWords - 1, -1L >>> (64 - (length & 63)));
+        }
+    }
+
+    /**
+     * Sets every bit that is set
+     * in the other BitPlane.
+     *
+     * @param other A BitPlane of the same length
+     *
+     * @return the number of bits newly set
+     */
+    public long or(BitPlane other) {
+        long numWords = (length + 63) >>> 6;
+        long added = 0;
+        for(long w = 0; w < numWords; w++) {
+            long word = getWord(w);
+            long merged = word | other.getWord(w);
+            if(merged != word) {
+                added += Long.bitCount(merged & ~word);
+                setWord(w, merged);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Sets the w'th word of 64 bits.
+     *
+     * @param w The word's index
+     * @param word The word
+     */
+    private void setWord(long w, long word) {
+        chunks[(int)(w >>> (CHUNK_SHIFT - 6))]
+            .put((int)w & (CHUNK_WORDS - 1), word);
+    }
+
+    /**
+     * Returns the number of chunks
+     * needed for the given number of bits.
+     *
+     * @param length The number of bits
+     *
+     * @return the number of chunks
+     */
+    private static int numChunks(long length) {
+        return (int)Math.max(1, (length + CHUNK_BITS - 1) >>> CHUNK_SHIFT);
+    }
+
+    /**
+     * Returns the number of words in the
+     * given chunk for the given number of bits.
+     *
+     * @param length The number of bits
+     * @param c The chunk
+     *
+     * @return the number of words
+     */
+    private static int chunkWords(long length, int c) {
+        long bits = Math.min(CHUNK_BITS, length - (long)c * CHUNK_BITS);
+        return (int)((Math.max(0, bits) + 63) >>> 6);
+    }
+}
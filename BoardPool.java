@@ -0,0 +1,191 @@
+import java.util.*;
+import java.util.concurrent.*;
+public class BoardPool {
+    private int size;
+    private int capacity;
+    private Map<Integer, BlockingQueue<Board>> queues;
+    private ExecutorService workers;
+
+    /**
+     * Creates an empty BoardPool of
+     * boards of the given size.
+     *
+     * @param size The size (edge length) of the boards
+     * @param capacity The number of boards to keep
+     *                 ready for each number of mines
+     */
+    public BoardPool(int size, int capacity) {
+        this.size = size;
+        this.capacity = capacity;
+        this.queues = new ConcurrentHashMap<Integer, BlockingQueue<Board>>();
+        this.workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BoardPool worker");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the size (edge length) of the boards.
+     *
+     * @return the size (edge length) of the boards
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Starts a worker generating boards with
+     * the given number of mines, if there
+     * isn't one already. The worker keeps
+     * the pool topped up until shutdown.
+     *
+     * @param numMines The number of mines
+     */
+    public synchronized void prepare(final int numMines) {
+        if(queues.containsKey(numMines)) {
+            return;
+        }
+        final BlockingQueue<Board> queue =
+            new ArrayBlockingQueue<Board>(capacity);
+        queues.put(numMines, queue);
+        workers.execute(new Runnable() {
+            public void run() {
+                Random seeds = new Random();
+                try {
+                    while(true) {
+                        Board board = generate(numMines, seeds.nextLong());
+                        if(board != null) {
+                            queue.put(board);
+                        }
+                    }
+                } catch(InterruptedException e) {
+                    // Shut down
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns a ready board with the given
+     * number of mines, without waiting.
+     *
+     * @param numMines The number of mines
+     *
+     * @return a board solvable without guessing,
+     *         or null if none is ready yet
+     */
+    public Board take(int numMines) {
+        prepare(numMines);
+        return queues.get(numMines).poll();
+    }
+
+    /**
+     * Stops the workers.
+     */
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Generates the board with the given seed
+     * and checks that the Solver can win it
+     * without guessing, starting from the
+     * empty spot nearest the centre.
+     *
+     * @param numMines The number of mines
+     * @param seed The seed of the board
+     *
+     * @return the board, or null if it can't
+     *         be won without guessing
+     */
+    private Board generate(int numMines, long seed) {
+        Minesweeper minesweeper = new Minesweeper(size, numMines, seed);
+        int start = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                if(minesweeper.isMine(x, y)
+                || minesweeper.getNumAdjacentMines(x, y) != 0) continue;
+                int distance = Math.abs(2*x - size) + Math.abs(2*y - size);
+                if(distance < bestDistance) {
+                    bestDistance = distance;
+                    start = x + y*size;
+                }
+            }
+        }
+        if(start == -1) {
+            return null;
+        }
+        int startX = start % size;
+        int startY = start / size;
+        if(!new Solver(minesweeper, seed).solve(startX, startY, false)) {
+            return null;
+        }
+        return new Board(numMines, seed, startX, startY);
+    }
+
+    /**
+     * A board that can be won without
+     * guessing from a given starting spot.
+     */
+    public static class Board {
+        private int numMines;
+        private long seed;
+        private int startX, startY;
+
+        /**
+         * Creates a Board.
+         *
+         * @param numMines The number of mines
+         * @param seed The seed of the board
+         * @param startX The x co-ord to start at
+         * @param startY The y co-ord to start at
+         */
+        public Board(int numMines, long seed, int startX, int startY) {
+            this.numMines = numMines;
+            this.seed = seed;
+            this.startX = startX;
+            this.startY = startY;
+        }
+
+        /**
+         * Returns the number of mines.
+         *
+         * @return the number of mines
+         */
+        public int getNumMines() {
+            return numMines;
+        }
+
+        /**
+         * Returns the seed of the board.
+         *
+         * @return the seed of the board
+         */
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * Returns the x co-ord to start at.
+         *
+         * @return the x co-ord to start at
+         */
+        public int getStartX() {
+            return startX;
+        }
+
+        /**
+         * Returns the y co-ord to start at.
+         *
+         * @return the y co-ord to start at
+         */
+        public int getStartY() {
+            return startY;
+        }
+    }
+}
@@ -1,14 +1,25 @@
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.*;
-import java.awt.geom.*;
-import java.io.*;
-import java.util.*;
-import javax.imageio.*;
 import javax.swing.*;
-public class BoardView extends JPanel implements Observer {
+public class BoardView extends JPanel implements MineModelListener {
     private MineModel model;
     private MineButton[][] buttons;
+    private boolean showHints;
+    private HintUpdater hints;
+    // The spots given their own hint, and the
+    // hint shared by every other unknown spot
+    private CellList frontier = new CellList();
+    private double otherHint = Double.NaN;
+    // True iff the buttons show a won game
+    private boolean won;
+    // The area covering every button changed
+    // since the last repaint, or null, and the
+    // number of buttons changed in it
+    private Rectangle dirty;
+    private int numDirty;
+    // The visible state of every spot, kept
+    // to be reused by each full update
+    private byte[] state = new byte[0];
 
     /**
      * Creates a BoardView of the given MineModel.
@@ -16,11 +27,29 @@ public class BoardView extends JPanel implements Observer {
      * @param model The model to view
      */
     public BoardView(MineModel model) {
+        this.model = model;
+        this.hints = new HintUpdater(model) {
+            protected void hintsChanged(double[] probabilities,
+                                        CellList frontier,
+                                        double other) {
+                showHints(probabilities, frontier, other);
+            }
+        };
+        createButtons();
+        setBackground(Color.BLACK);
+        update();
+    }
+
+    /**
+     * Creates a MineButton for each spot,
+     * replacing any there were before.
+     */
+    private void createButtons() {
+        removeAll();
         GridLayout layout = new GridLayout(model.getSize(), model.getSize());
         layout.setHgap(2);
         layout.setVgap(2);
         setLayout(layout);
-        this.model = model;
         buttons = new MineButton[model.getSize()][model.getSize()];
         for(int y = 0; y < model.getSize(); y++) {
             for(int x = 0; x < model.getSize(); x++) {
@@ -28,20 +57,120 @@ public class BoardView extends JPanel implements Observer {
                 add(buttons[x][y]);
             }
         }
-        setBackground(Color.BLACK);
-        update();
+        // The new buttons have no hints
+        frontier = new CellList();
     }
 
     /**
-     * This method is called whenever
-     * the observable object is changed.
+     * Updates every button, rebuilding them
+     * first if the board changed size.
      *
-     * @param o The observable object
-     * @param arg An argument passed to the
-     *            notifyObservers method
+     * @param model The model
      */
-    public void update(Observable o, Object arg) {
+    public void boardReset(MineModel model) {
+        long start = System.nanoTime();
+        // A loaded game may be a different size
+        if(buttons.length != model.getSize()) {
+            createButtons();
+            revalidate();
+            // Resize the window to fit
+            Window window = SwingUtilities.getWindowAncestor(this);
+            if(window != null) {
+                window.pack();
+            }
+        }
         update();
+        finish(start);
+    }
+
+    /**
+     * Does nothing, as no spots change
+     * until the next reset.
+     *
+     * @param model The model
+     */
+    public void numMinesChanged(MineModel model) {}
+
+    /**
+     * Updates the buttons for the spots revealed.
+     *
+     * @param model The model
+     * @param cells The spots that changed
+     */
+    public void cellsRevealed(MineModel model, CellList cells) {
+        long start = System.nanoTime();
+        update(cells);
+        finish(start);
+    }
+
+    /**
+     * Updates the buttons for the spots hidden.
+     *
+     * @param model The model
+     * @param cells The spots hidden
+     */
+    public void cellsHidden(MineModel model, CellList cells) {
+        long start = System.nanoTime();
+        if(won) {
+            // Undoing the winning move hides
+            // the unrevealed mines again
+            update();
+        } else {
+            update(cells);
+        }
+        finish(start);
+    }
+
+    /**
+     * Updates the buttons for the flags toggled.
+     *
+     * @param model The model
+     * @param cells The spots toggled
+     */
+    public void flagChanged(MineModel model, CellList cells) {
+        long start = System.nanoTime();
+        update(cells);
+        finish(start);
+    }
+
+    /**
+     * Does nothing, as the change that
+     * ended the game has already been shown.
+     *
+     * @param model The model
+     * @param state The game's final state
+     */
+    public void gameOver(MineModel model, GameState state) {}
+
+    /**
+     * Finishes an update: asks for new hints if
+     * they are shown, repaints what changed, and
+     * records the time the update took.
+     *
+     * @param start When the update started,
+     *              from System.nanoTime
+     */
+    private void finish(long start) {
+        if(showHints) {
+            hints.request();
+        }
+        repaintDirty();
+        Metrics.VIEW_UPDATE_NANOS.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Updates the MineButtons of
+     * the given spots.
+     *
+     * @param cells The spots
+     */
+    private void update(CellList cells) {
+        int size = model.getSize();
+        for(int i = 0; i < cells.size(); i++) {
+            int cell = cells.get(i);
+            update(cell % size, cell / size);
+        }
+        showWin();
     }
 
     /**
@@ -50,32 +179,162 @@ public class BoardView extends JPanel implements Observer {
      * the correct type.
      */
     private void update() {
-        boolean hasWon = true;
-        for(int x = 0; x < model.getSize(); x++) {
-            for(int y = 0; y < model.getSize(); y++) {
-                if(model.isRevealed(x, y)) {
-                    if(model.isMine(x, y)) {
-                        buttons[x][y].setMine();
-                        hasWon = false;
-                    } else {
-                        buttons[x][y].setNumber(model.getNumAdjacentMines(x, y));
-                    }
-                } else {
-                    buttons[x][y].setFlag(model.isFlag(x, y));
-                    if(!model.isMine(x, y)) {
-                        hasWon = false;
-                    }
-                }
-                buttons[x][y].repaint();
+        int size = model.getSize();
+        if(state.length != size * size) {
+            state = new byte[size * size];
+        }
+        model.exportState(state);
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                // The states match the tiles
+                buttons[x][y].setTile(state[x + y*size]);
+                markDirty(x, y);
             }
         }
-        if(hasWon) {
-            for(int x = 0; x < model.getSize(); x++) {
-                for(int y = 0; y < model.getSize(); y++) {
-                    if(!model.isRevealed(x, y)) {
-                        buttons[x][y].setMine();
-                        buttons[x][y].repaint();
-                    }
+        showWin();
+    }
+
+    /**
+     * Sets the MineButton at x,y
+     * to be the correct type.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     */
+    private void update(int x, int y) {
+        if(model.isRevealed(x, y)) {
+            if(model.isMine(x, y)) {
+                buttons[x][y].setMine();
+            } else {
+                buttons[x][y].setNumber(model.getNumAdjacentMines(x, y));
+            }
+        } else {
+            buttons[x][y].setFlag(model.isFlag(x, y));
+        }
+        markDirty(x, y);
+    }
+
+    /**
+     * Adds the button at x,y to the
+     * area to repaint.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     */
+    private void markDirty(int x, int y) {
+        Rectangle bounds = buttons[x][y].getBounds();
+        numDirty++;
+        if(dirty == null) {
+            dirty = bounds;
+        } else {
+            dirty.add(bounds);
+        }
+    }
+
+    /**
+     * Repaints the area covering every
+     * changed button in a single request,
+     * rather than one per button.
+     */
+    private void repaintDirty() {
+        if(dirty != null) {
+            repaint(dirty);
+            dirty = null;
+        }
+        Metrics.REPAINTED_SPOTS.record(numDirty);
+        numDirty = 0;
+    }
+
+    /**
+     * Sets whether each unrevealed spot is
+     * tinted by the probability it is a mine.
+     * The probabilities are worked out in the
+     * background, and shown once they are ready.
+     *
+     * @param showHints True iff the hints
+     *                  should be shown
+     */
+    public void setShowHints(boolean showHints) {
+        this.showHints = showHints;
+        if(showHints) {
+            hints.request();
+        } else {
+            hints.cancel();
+            showHints(null, new CellList(), Double.NaN);
+        }
+    }
+
+    /**
+     * Returns the colour to tint a spot with the
+     * given probability of being a mine: green
+     * when safe, through to red when certain.
+     *
+     * @param probability The probability
+     *
+     * @return the tint colour
+     */
+    public static Color hintColor(double probability) {
+        int red = (int)Math.round(255 * probability);
+        return new Color(red, 255 - red, 0, 96);
+    }
+
+    /**
+     * Gives each MineButton next to a revealed
+     * number its own probability of being a mine,
+     * and every other one the shared probability,
+     * repainting those that changed. Only the
+     * spots next to a number are visited, as
+     * the rest all show the shared hint.
+     *
+     * @param probabilities The probability that each
+     *                      spot is a mine, or null
+     *                      to clear the hints
+     * @param frontier The spots next to a number
+     * @param other The probability shared by
+     *              every other unknown spot
+     */
+    private void showHints(double[] probabilities, CellList frontier, double other) {
+        int size = model.getSize();
+        if(probabilities != null && probabilities.length != size * size) {
+            // Worked out before the board changed size,
+            // and a request for the new one is waiting
+            return;
+        }
+        for(int i = 0; i < this.frontier.size(); i++) {
+            int cell = this.frontier.get(i);
+            if(buttons[cell % size][cell / size].setHint(Double.NaN)) {
+                markDirty(cell % size, cell / size);
+            }
+        }
+        for(int i = 0; i < frontier.size(); i++) {
+            int cell = frontier.get(i);
+            if(buttons[cell % size][cell / size].setHint(probabilities[cell])) {
+                markDirty(cell % size, cell / size);
+            }
+        }
+        this.frontier = frontier;
+        if(Double.compare(other, otherHint) != 0) {
+            otherHint = other;
+            // Every spot away from the numbers changed
+            repaint();
+        }
+        repaintDirty();
+    }
+
+    /**
+     * If the game has been won, shows
+     * the unrevealed spots as mines.
+     */
+    private void showWin() {
+        won = model.getState() == GameState.WON;
+        if(!won) {
+            return;
+        }
+        for(int x = 0; x < model.getSize(); x++) {
+            for(int y = 0; y < model.getSize(); y++) {
+                if(!model.isRevealed(x, y)) {
+                    buttons[x][y].setMine();
+                    markDirty(x, y);
                 }
             }
         }
@@ -85,17 +344,11 @@ public class BoardView extends JPanel implements Observer {
      * Represents a single (clickable) spot
      * in the minesweeper grid.
      */
-    private static class MineButton extends JComponent {
-        private static final Rectangle
-            FILL_RECT = new Rectangle(0, 0, 20, 20);
-        private static Paint[]
-            NUMBER_PAINTS = new Paint[9];
-        private static Paint
-            NORMAL_PAINT,
-            FLAG_PAINT,
-            MINE_PAINT;
-
-        private Paint paint;
+    private class MineButton extends JComponent {
+        private int tile;
+        // This spot's own hint, or NaN to
+        // show the shared one if it is unknown
+        private double hint = Double.NaN;
         private int x, y;
         private MineModel model;
 
@@ -111,7 +364,9 @@ public class BoardView extends JPanel implements Observer {
             this.model = model;
             this.x = x;
             this.y = y;
-            setPreferredSize(new Dimension(20, 20));
+            setPreferredSize(new Dimension(TileAtlas.TILE_SIZE,
+                                           TileAtlas.TILE_SIZE));
+            setOpaque(true);
             setFlag(false);
             addMouseListener(new SquareListener(model, x, y));
         }
@@ -121,10 +376,7 @@ public class BoardView extends JPanel implements Observer {
          * visually represent a mine.
          */
         public void setMine() {
-            if(MINE_PAINT == null) {
-                MINE_PAINT = loadPaint("Mine");
-            }
-            paint = MINE_PAINT;
+            tile = TileAtlas.MINE;
         }
 
         /**
@@ -136,17 +388,7 @@ public class BoardView extends JPanel implements Observer {
          *             represent a flag
          */
         public void setFlag(boolean flag) {
-            if(flag) {
-                if(FLAG_PAINT == null) {
-                    FLAG_PAINT = loadPaint("Flag");
-                }
-                paint = FLAG_PAINT;
-            } else {
-                if(NORMAL_PAINT == null) {
-                    NORMAL_PAINT = loadPaint("Normal");
-                }
-                paint = NORMAL_PAINT;
-            }
+            tile = flag ? TileAtlas.FLAG : TileAtlas.NORMAL;
         }
 
         /**
@@ -164,51 +406,53 @@ public class BoardView extends JPanel implements Observer {
                 throw new IllegalArgumentException(
                     "n must be between 0 and 8 inclusive.");
             }
-            if(NUMBER_PAINTS[n] == null) {
-                NUMBER_PAINTS[n] = loadPaint("" + n);
-            }
-            paint = NUMBER_PAINTS[n];
+            tile = n;
         }
 
         /**
-         * Paints the MineButton onto the
-         * given Graphics object.
+         * Sets the MineButton to show the
+         * given tile from the TileAtlas.
          *
-         * @param g The Graphics object
-         *          to paint onto
+         * @param tile The tile
          */
-        public void paintComponent(Graphics g) {
-            Graphics2D g2D = (Graphics2D)g;
-            g2D.setPaint(paint);
-            g2D.fill(FILL_RECT);
+        public void setTile(int tile) {
+            this.tile = tile;
         }
 
         /**
-         * Loads the given image into a Paint
-         * (specifically a TexturePaint) and returns it.
-         * The image name shouldn't have an extension.
+         * Sets the probability that this spot is
+         * a mine, to be shown as a tint, or NaN
+         * to show the shared hint.
          *
-         * @param imageFile The image to load
+         * @param hint The probability, or NaN
          *
-         * @return The image loaded into a Paint
+         * @return true iff the hint changed
+         */
+        public boolean setHint(double hint) {
+            if(Double.compare(hint, this.hint) == 0) {
+                return false;
+            }
+            this.hint = hint;
+            return true;
+        }
+
+        /**
+         * Paints the MineButton onto the
+         * given Graphics object by copying
+         * its tile from the atlas, tinted
+         * by its hint if it is unknown.
          *
-         * @throws RuntimeException
-         *         if loading the image failed
+         * @param g The Graphics object
+         *          to paint onto
          */
-        private Paint loadPaint(String imageFile) {
-            imageFile = "images/" + imageFile + ".png";
-            try {
-                InputStream is =
-                    getClass()
-                    .getClassLoader()
-                    .getResourceAsStream(imageFile);
-                BufferedImage image = ImageIO.read(is);
-                return new TexturePaint(
-                    image,
-                    new Rectangle2D.Double(0, 0, 20, 20));
-            } catch(IOException e) {
-                throw new RuntimeException(
-                    "Failed to load image \"" + imageFile + "\".");
+        public void paintComponent(Graphics g) {
+            int size = Math.min(getWidth(), getHeight());
+            TileAtlas.draw(g, tile, 0, 0, size);
+            double shown = Double.isNaN(hint) ? otherHint : hint;
+            if(!Double.isNaN(shown)
+            && (tile == TileAtlas.NORMAL || tile == TileAtlas.FLAG)) {
+                g.setColor(hintColor(shown));
+                g.fillRect(0, 0, size, size);
             }
         }
     }
@@ -0,0 +1,384 @@
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.*;
+public class CanvasBoardView extends JComponent
+    implements MineModelListener, Scrollable {
+    private static final int GAP = 2;
+    // The range of spot sizes zooming can reach
+    private static final int MIN_CELL = 8;
+    private static final int MAX_CELL = 80;
+
+    private MineModel model;
+    // The size of each spot, and the
+    // distance from one to the next
+    private int cell = TileAtlas.TILE_SIZE;
+    private int pitch = cell + GAP;
+    // The probability each spot is a mine,
+    // or null if hints aren't shown, and the
+    // background calculation of the next ones
+    private double[] hints;
+    private boolean showHints;
+    private HintUpdater updater;
+    // The visible state of the spots being
+    // painted, kept to be reused by each paint
+    private byte[] state = new byte[0];
+
+    /**
+     * Creates a CanvasBoardView of the given MineModel.
+     * Unlike BoardView, the whole board is a single
+     * component which paints only the spots inside
+     * its clip, so it should be placed in a JScrollPane
+     * to play boards too big to fit on the screen.
+     * Turning the mouse wheel with control held
+     * zooms in and out.
+     *
+     * @param model The model to view
+     */
+    public CanvasBoardView(MineModel model) {
+        this.model = model;
+        this.updater = new HintUpdater(model) {
+            protected void hintsChanged(double[] probabilities,
+                                        CellList frontier,
+                                        double other) {
+                showHints(probabilities);
+            }
+        };
+        setOpaque(true);
+        setBackground(Color.BLACK);
+        addMouseListener(new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                int x = e.getX() / pitch;
+                int y = e.getY() / pitch;
+                // Ignore presses on the gaps between spots
+                if(e.getX() % pitch >= cell || e.getY() % pitch >= cell) {
+                    return;
+                }
+                if(x < CanvasBoardView.this.model.getSize()
+                && y < CanvasBoardView.this.model.getSize()) {
+                    SquareListener.press(
+                        CanvasBoardView.this.model, x, y,
+                        SquareListener.getButton(e));
+                }
+            }
+        });
+        addMouseWheelListener(new MouseWheelListener() {
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if(!e.isControlDown()) {
+                    // Let the scroll pane scroll
+                    getParent().dispatchEvent(
+                        SwingUtilities.convertMouseEvent(
+                            CanvasBoardView.this, e, getParent()));
+                    return;
+                }
+                setCellSize(e.getWheelRotation() < 0
+                            ? cell * 5 / 4
+                            : cell * 4 / 5);
+            }
+        });
+    }
+
+    /**
+     * Sets the size each spot is drawn at,
+     * zooming in or out. The tiles for each
+     * size are scaled once and then cached.
+     *
+     * @param cellSize The size of each spot,
+     *                 clamped to a usable range
+     */
+    public void setCellSize(int cellSize) {
+        cell = Math.max(MIN_CELL, Math.min(MAX_CELL, cellSize));
+        pitch = cell + GAP;
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Repaints the whole board, as
+     * it may have changed size.
+     *
+     * @param model The model
+     */
+    public void boardReset(MineModel model) {
+        revalidate();
+        repaint();
+        updateHints();
+    }
+
+    /**
+     * Does nothing, as no spots change
+     * until the next reset.
+     *
+     * @param model The model
+     */
+    public void numMinesChanged(MineModel model) {}
+
+    /**
+     * Repaints the spots revealed, or the whole
+     * board if the game was won, as every
+     * unrevealed spot is then shown as a mine.
+     *
+     * @param model The model
+     * @param cells The spots that changed
+     */
+    public void cellsRevealed(MineModel model, CellList cells) {
+        if(model.getState() == GameState.WON) {
+            repaint();
+        } else {
+            repaintCells(cells);
+        }
+        updateHints();
+    }
+
+    /**
+     * Repaints the whole board, as undoing the
+     * winning move hides the mines it showed.
+     *
+     * @param model The model
+     * @param cells The spots hidden
+     */
+    public void cellsHidden(MineModel model, CellList cells) {
+        repaint();
+        updateHints();
+    }
+
+    /**
+     * Repaints the flags toggled.
+     *
+     * @param model The model
+     * @param cells The spots toggled
+     */
+    public void flagChanged(MineModel model, CellList cells) {
+        repaintCells(cells);
+        updateHints();
+    }
+
+    /**
+     * Does nothing, as the change that
+     * ended the game has already been shown.
+     *
+     * @param model The model
+     * @param state The game's final state
+     */
+    public void gameOver(MineModel model, GameState state) {}
+
+    /**
+     * Asks for new hints, if they are shown, as
+     * any change can move the probability of
+     * every unrevealed spot. The old ones are
+     * shown until the new ones are ready.
+     */
+    private void updateHints() {
+        if(showHints) {
+            updater.request();
+        }
+    }
+
+    /**
+     * Sets whether each unrevealed spot is
+     * tinted by the probability it is a mine.
+     * The probabilities are worked out in the
+     * background, and shown once they are ready.
+     *
+     * @param showHints True iff the hints
+     *                  should be shown
+     */
+    public void setShowHints(boolean showHints) {
+        this.showHints = showHints;
+        if(showHints) {
+            updater.request();
+        } else {
+            updater.cancel();
+            hints = null;
+            repaint();
+        }
+    }
+
+    /**
+     * Shows the given hints, unless they
+     * were worked out for a board of a
+     * different size.
+     *
+     * @param probabilities The probability
+     *                      that each spot is a mine
+     */
+    private void showHints(double[] probabilities) {
+        int size = model.getSize();
+        if(probabilities.length == size * size) {
+            hints = probabilities;
+            repaint();
+        }
+    }
+
+    /**
+     * Repaints the smallest rectangle
+     * holding all of the given spots.
+     *
+     * @param cells The spots to repaint
+     */
+    private void repaintCells(CellList cells) {
+        if(cells.isEmpty()) {
+            return;
+        }
+        int size = model.getSize();
+        int minX = size, minY = size, maxX = -1, maxY = -1;
+        for(int i = 0; i < cells.size(); i++) {
+            int cell = cells.get(i);
+            int x = cell % size;
+            int y = cell / size;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        repaint(minX * pitch, minY * pitch,
+                (maxX - minX) * pitch + cell,
+                (maxY - minY) * pitch + cell);
+    }
+
+    /**
+     * Paints the spots inside the clip
+     * onto the given Graphics object.
+     *
+     * @param g The Graphics object
+     *          to paint onto
+     */
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        Rectangle clip = g.getClipBounds();
+        if(clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        // Copy the spots inside the clip while holding
+        // the model still, so a move on another thread
+        // is never painted half made
+        int size, minX, minY, maxX, maxY;
+        boolean won;
+        synchronized(model) {
+            size = model.getSize();
+            minX = Math.max(0, clip.x / pitch);
+            minY = Math.max(0, clip.y / pitch);
+            maxX = Math.min(size - 1, (clip.x + clip.width) / pitch);
+            maxY = Math.min(size - 1, (clip.y + clip.height) / pitch);
+            int width = maxX - minX + 1;
+            int height = maxY - minY + 1;
+            if(width > 0 && height > 0) {
+                if(state.length < width * height) {
+                    state = new byte[width * height];
+                }
+                model.exportState(minX, minY, width, height, state, 0);
+            }
+            won = model.getState() == GameState.WON;
+        }
+        // Hints for a board of another size are
+        // dropped until the new ones are ready
+        double[] hints = this.hints;
+        if(hints != null && hints.length != size * size) {
+            hints = null;
+        }
+        int i = 0;
+        for(int y = minY; y <= maxY; y++) {
+            for(int x = minX; x <= maxX; x++) {
+                int tile = state[i++];
+                boolean hidden = tile == Minesweeper.HIDDEN
+                    || tile == Minesweeper.FLAGGED;
+                if(won && hidden) {
+                    // Every unrevealed spot is a mine
+                    tile = TileAtlas.MINE;
+                }
+                TileAtlas.draw(g, tile, x * pitch, y * pitch, cell);
+                if(hints != null && hidden
+                && !Double.isNaN(hints[x + y*size])) {
+                    g.setColor(BoardView.hintColor(hints[x + y*size]));
+                    g.fillRect(x * pitch, y * pitch, cell, cell);
+                }
+            }
+        }
+        Metrics.VIEW_UPDATE_NANOS.record(System.nanoTime() - start);
+        Metrics.REPAINTED_SPOTS.record(
+            Math.max(0, (maxX - minX + 1) * (maxY - minY + 1)));
+    }
+
+    /**
+     * Returns the preferred size: every
+     * spot with a gap between each.
+     *
+     * @return the preferred size
+     */
+    public Dimension getPreferredSize() {
+        int length = model.getSize() * pitch - GAP;
+        return new Dimension(length, length);
+    }
+
+    /**
+     * Returns the size of the viewport to
+     * show by default: the whole board,
+     * or 30x30 spots if it is bigger.
+     *
+     * @return the preferred viewport size
+     */
+    public Dimension getPreferredScrollableViewportSize() {
+        int length = Math.min(model.getSize(), 30) * pitch - GAP;
+        return new Dimension(length, length);
+    }
+
+    /**
+     * Returns the distance to scroll to
+     * expose one more row or column of spots.
+     *
+     * @param visibleRect The visible area
+     * @param orientation The scroll direction
+     * @param direction Less than 0 to scroll
+     *                  up or left
+     *
+     * @return the distance to scroll
+     */
+    public int getScrollableUnitIncrement(Rectangle visibleRect,
+                                          int orientation,
+                                          int direction) {
+        return pitch;
+    }
+
+    /**
+     * Returns the distance to scroll to
+     * expose a new page of spots, keeping
+     * one row or column of the old page.
+     *
+     * @param visibleRect The visible area
+     * @param orientation The scroll direction
+     * @param direction Less than 0 to scroll
+     *                  up or left
+     *
+     * @return the distance to scroll
+     */
+    public int getScrollableBlockIncrement(Rectangle visibleRect,
+                                           int orientation,
+                                           int direction) {
+        int extent = orientation == SwingConstants.VERTICAL
+            ? visibleRect.height
+            : visibleRect.width;
+        return Math.max(pitch, extent - pitch);
+    }
+
+    /**
+     * Returns false, as the board keeps its
+     * width whatever the viewport's width.
+     *
+     * @return false
+     */
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    /**
+     * Returns false, as the board keeps its
+     * height whatever the viewport's height.
+     *
+     * @return false
+     */
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -0,0 +1,103 @@
+import java.util.Arrays;
+public class CellList {
+    private int[] cells;
+    private int size;
+
+    /**
+     * Creates an empty CellList.
+     */
+    public CellList() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty CellList with room
+     * for the given number of cells.
+     *
+     * @param capacity The initial capacity
+     */
+    public CellList(int capacity) {
+        cells = new int[Math.max(capacity, 1)];
+        size = 0;
+    }
+
+    /**
+     * Adds a cell to the end of the list.
+     *
+     * @param index The cell's board index
+     */
+    public void add(int index) {
+        if(size == cells.length) {
+            // Grow by half again, capped so the
+            // length never overflows an int
+            int capacity = cells.length + (cells.length >> 1) + 1;
+            if(capacity < 0) {
+                capacity = Integer.MAX_VALUE - 8;
+            }
+            cells = Arrays.copyOf(cells, capacity);
+        }
+        cells[size++] = index;
+    }
+
+    /**
+     * Adds every cell of another
+     * list to the end of this one.
+     *
+     * @param other The list to add
+     */
+    public void addAll(CellList other) {
+        if(size + other.size > cells.length) {
+            cells = Arrays.copyOf(cells,
+                Math.max(size + other.size, cells.length + (cells.length >> 1)));
+        }
+        System.arraycopy(other.cells, 0, cells, size, other.size);
+        size += other.size;
+    }
+
+    /**
+     * Returns the board index of the
+     * i'th cell in the list.
+     *
+     * @param i The position in the list
+     *
+     * @return the board index of the cell
+     *
+     * @throws IndexOutOfBoundsException
+     *         if i isn't a valid position
+     */
+    public int get(int i) {
+        if(i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(
+                "Index " + i + " out of bounds for size " + size + ".");
+        }
+        return cells[i];
+    }
+
+    /**
+     * Returns the number of cells in the list.
+     *
+     * @return the number of cells in the list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true iff the list is empty.
+     *
+     * @return true iff the list is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the board indices of
+     * the cells in the list.
+     *
+     * @return a copy of the board indices
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(cells, size);
+    }
+}
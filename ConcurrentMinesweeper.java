@@ -0,0 +1,445 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+public class ConcurrentMinesweeper {
+    // Each spot's state, two bits per spot,
+    // 32 spots per word, indexed by x + y*size
+    private static final long REVEALED = 1L;
+    private static final long FLAGGED = 2L;
+
+    private final int size;
+    private final int numMines;
+    private final int numSafe;
+    private final AtomicLongArray state;
+    // The mine plane and adjacent mine counts,
+    // packed as in Minesweeper. They never change
+    // once the first spot has been revealed.
+    private volatile long[] mines;
+    private volatile long[] counts;
+    // Running totals, changed only by the
+    // thread that claimed each spot
+    private final AtomicInteger revealedSafe;
+    private final AtomicInteger revealedMines;
+    private final AtomicInteger numFlags;
+    // The board until its first reveal, which
+    // may move mines and so is made under a lock
+    private Minesweeper board;
+    private volatile boolean started;
+
+    /**
+     * Creates a ConcurrentMinesweeper playing
+     * the given board, which it takes over: the
+     * board mustn't be used by anything else.
+     * Any number of threads may then reveal and
+     * flag spots at once. Each spot changes state
+     * with a compare-and-set on the word holding
+     * it, so there is no lock except around the
+     * first reveal, which may move mines.
+     *
+     * @param board The board to play
+     */
+    public ConcurrentMinesweeper(Minesweeper board) {
+        this.size = board.getSize();
+        this.numMines = board.getNumMines();
+        this.numSafe = size * size - numMines;
+        this.state = new AtomicLongArray((size * size + 31) >>> 5);
+        this.revealedSafe = new AtomicInteger();
+        this.revealedMines = new AtomicInteger();
+        this.numFlags = new AtomicInteger();
+        copyPlanes(board);
+        boolean untouched = board.getNumRevealed() == 0
+            && !board.hasRevealedMine();
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                int cell = index(x, y);
+                if(board.isFlag(x, y)) {
+                    set(cell, FLAGGED);
+                    numFlags.incrementAndGet();
+                }
+                if(board.isRevealed(x, y)) {
+                    set(cell, REVEALED);
+                    (board.isMine(x, y) ? revealedMines : revealedSafe)
+                        .incrementAndGet();
+                }
+            }
+        }
+        if(untouched) {
+            this.board = board;
+        } else {
+            this.started = true;
+        }
+    }
+
+    /**
+     * Returns the size (edge length) of the board.
+     *
+     * @return the size (edge length) of the board
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of mines in the board.
+     *
+     * @return the number of mines in the board
+     */
+    public int getNumMines() {
+        return numMines;
+    }
+
+    /**
+     * Returns true iff the spot
+     * at x,y is revealed.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff the spot at
+     *              x,y is revealed
+     */
+    public boolean isRevealed(int x, int y) {
+        return (get(index(x, y)) & REVEALED) != 0;
+    }
+
+    /**
+     * Returns true iff the spot
+     * at x,y is a mine. Until the first
+     * reveal, mines may still move.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff the spot at
+     *              x,y is a mine
+     */
+    public boolean isMine(int x, int y) {
+        return isMine(index(x, y));
+    }
+
+    /**
+     * Returns true iff the spot
+     * at x,y is flagged.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff the spot at
+     *              x,y is flagged
+     */
+    public boolean isFlag(int x, int y) {
+        return (get(index(x, y)) & FLAGGED) != 0;
+    }
+
+    /**
+     * Returns the number of mines
+     * adjacent to x,y.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the number of mines
+     *         adjacent to x,y
+     */
+    public int getNumAdjacentMines(int x, int y) {
+        return count(index(x, y));
+    }
+
+    /**
+     * Returns the state of the game.
+     *
+     * @return the state of the game
+     */
+    public GameState getState() {
+        if(revealedMines.get() > 0) {
+            return GameState.LOST;
+        }
+        return revealedSafe.get() == numSafe
+            ? GameState.WON
+            : GameState.PLAYING;
+    }
+
+    /**
+     * Returns the number of revealed spots.
+     *
+     * @return the number of revealed spots
+     */
+    public int getNumRevealed() {
+        return revealedSafe.get() + revealedMines.get();
+    }
+
+    /**
+     * Returns the number of flagged spots.
+     *
+     * @return the number of flagged spots
+     */
+    public int getNumFlags() {
+        return numFlags.get();
+    }
+
+    /**
+     * Toggles whether x,y is flagged,
+     * unless it has been revealed.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff the flag was toggled
+     */
+    public boolean toggleFlag(int x, int y) {
+        int cell = index(x, y);
+        int word = cell >>> 5;
+        int shift = (cell & 31) << 1;
+        while(true) {
+            long old = state.get(word);
+            if((old & (REVEALED << shift)) != 0) {
+                return false;
+            }
+            long updated = old ^ (FLAGGED << shift);
+            if(state.compareAndSet(word, old, updated)) {
+                boolean flagged = (updated & (FLAGGED << shift)) != 0;
+                numFlags.addAndGet(flagged ? 1 : -1);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Reveals x,y as Minesweeper.reveal does.
+     * Floods running at once in other threads
+     * may overlap this one, but each spot is
+     * revealed by exactly one of them, and
+     * appears only in that one's list.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the spots this call revealed
+     */
+    public CellList reveal(int x, int y) {
+        if(!started) {
+            CellList opened = revealFirst(x, y);
+            if(opened != null) {
+                return opened;
+            }
+        }
+        long startTime = System.nanoTime();
+        CellList opened = new CellList();
+        int start = index(x, y);
+        if(!claim(start)) {
+            return opened;
+        }
+        opened.add(start);
+        for(int head = 0; head < opened.size(); head++) {
+            int cell = opened.get(head);
+            int cx = cell % size;
+            int cy = cell / size;
+            if(count(cell) != 0) continue;
+            for(int i = cx - 1; i <= cx + 1; i++) {
+                for(int j = cy - 1; j <= cy + 1; j++) {
+                    if(i == cx && j == cy) continue;
+                    if(i < 0 || j < 0) continue;
+                    if(i >= size || j >= size) continue;
+                    int neighbour = index(i, j);
+                    if(claim(neighbour)) {
+                        opened.add(neighbour);
+                    }
+                }
+            }
+        }
+        if(isMine(start)) {
+            revealedSafe.addAndGet(opened.size() - 1);
+            revealedMines.incrementAndGet();
+            revealMines(opened);
+        } else {
+            revealedSafe.addAndGet(opened.size());
+        }
+        Metrics.REVEAL_NANOS.record(System.nanoTime() - startTime);
+        Metrics.FLOOD_SIZE.record(opened.size());
+        return opened;
+    }
+
+    /**
+     * Reveals all mines not yet revealed.
+     *
+     * @return the mines this call revealed
+     */
+    public CellList revealMines() {
+        CellList opened = new CellList();
+        revealMines(opened);
+        return opened;
+    }
+
+    /**
+     * Makes the first reveal through the
+     * Minesweeper, so that it can move mines
+     * off the spot, then copies its planes.
+     * Other threads' first reveals wait
+     * for this one to finish.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the spots revealed, or null if
+     *         another thread revealed first
+     */
+    private synchronized CellList revealFirst(int x, int y) {
+        if(started) {
+            return null;
+        }
+        CellList revealed = board.reveal(x, y);
+        copyPlanes(board);
+        board = null;
+        CellList opened = new CellList(revealed.size());
+        int safe = 0, mine = 0;
+        for(int i = 0; i < revealed.size(); i++) {
+            int cell = revealed.get(i);
+            if(claim(cell)) {
+                opened.add(cell);
+                if(isMine(cell)) {
+                    mine++;
+                } else {
+                    safe++;
+                }
+            }
+        }
+        revealedSafe.addAndGet(safe);
+        revealedMines.addAndGet(mine);
+        started = true;
+        return opened;
+    }
+
+    /**
+     * Reveals every mine this
+     * thread can claim.
+     *
+     * @param opened The list to add to
+     */
+    private void revealMines(CellList opened) {
+        long[] mines = this.mines;
+        int claimed = 0;
+        for(int w = 0; w < mines.length; w++) {
+            long bits = mines[w];
+            while(bits != 0) {
+                int cell = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if(claim(cell)) {
+                    opened.add(cell);
+                    claimed++;
+                }
+            }
+        }
+        revealedMines.addAndGet(claimed);
+    }
+
+    /**
+     * Marks the spot at the given index as
+     * revealed, if no other thread has yet.
+     *
+     * @param cell The spot's index
+     *
+     * @return true iff this thread revealed it
+     */
+    private boolean claim(int cell) {
+        int word = cell >>> 5;
+        long bit = REVEALED << ((cell & 31) << 1);
+        while(true) {
+            long old = state.get(word);
+            if((old & bit) != 0) {
+                return false;
+            }
+            if(state.compareAndSet(word, old, old | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Copies the mines and adjacent mine
+     * counts from the given board.
+     *
+     * @param board The board
+     */
+    private void copyPlanes(Minesweeper board) {
+        long[] mines = new long[(size * size + 63) >>> 6];
+        long[] counts = new long[(size * size + 15) >>> 4];
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                int cell = index(x, y);
+                if(board.isMine(x, y)) {
+                    mines[cell >>> 6] |= 1L << cell;
+                }
+                counts[cell >>> 4] |= (long)board.getNumAdjacentMines(x, y)
+                    << ((cell & 15) << 2);
+            }
+        }
+        this.counts = counts;
+        this.mines = mines;
+    }
+
+    /**
+     * Sets a state bit of the spot
+     * at the given index.
+     *
+     * @param cell The spot's index
+     * @param bit REVEALED or FLAGGED
+     */
+    private void set(int cell, long bit) {
+        int word = cell >>> 5;
+        long mask = bit << ((cell & 31) << 1);
+        while(true) {
+            long old = state.get(word);
+            if(state.compareAndSet(word, old, old | mask)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the state bits of the
+     * spot at the given index.
+     *
+     * @param cell The spot's index
+     *
+     * @return REVEALED and/or FLAGGED
+     */
+    private long get(int cell) {
+        return (state.get(cell >>> 5) >>> ((cell & 31) << 1)) & 3;
+    }
+
+    /**
+     * Returns true iff the spot at
+     * the given index is a mine.
+     *
+     * @param cell The spot's index
+     *
+     * @return true iff the spot is a mine
+     */
+    private boolean isMine(int cell) {
+        return (mines[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Returns the number of mines adjacent
+     * to the spot at the given index.
+     *
+     * @param cell The spot's index
+     *
+     * @return the spot's adjacent mine count
+     */
+    private int count(int cell) {
+        return (int)(counts[cell >>> 4] >>> ((cell & 15) << 2)) & 0xF;
+    }
+
+    /**
+     * Returns the index of x,y
+     * in the bit planes.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the index of x,y
+     */
+    private int index(int x, int y) {
+        return x + y*size;
+    }
+}
@@ -1,12 +1,21 @@
+import java.awt.*;
 import java.awt.event.*;
+import java.io.*;
 import java.util.*;
 import javax.swing.*;
 public class ControlPanel extends JMenuBar {
+    // The numbers of mines for each difficulty
+    private static final int[] DIFFICULTIES = {10, 15, 20};
+
     private MineModel model;
+    private BoardPool pool;
+    private boolean noGuessing;
 
     /**
      * Creates a ControlPanel with
-     * the given MineModel.
+     * the given MineModel. Toggling
+     * "Show Hints" fires a "showHints"
+     * property change for the view.
      *
      * @param model The model to control
      */
@@ -16,8 +25,17 @@ public class ControlPanel extends JMenuBar {
         // Components
         JMenu game = new JMenu("Game");
         JMenuItem reveal = new JMenuItem("Reveal Mines");
+        final JCheckBoxMenuItem hints = new JCheckBoxMenuItem("Show Hints");
+        final JCheckBoxMenuItem noGuess = new JCheckBoxMenuItem("No Guessing");
+        final JCheckBoxMenuItem safeOpening = new JCheckBoxMenuItem("Safe Opening");
         JMenuItem restart = new JMenuItem("Restart");
+        JMenuItem save = new JMenuItem("Save...");
+        JMenuItem load = new JMenuItem("Load...");
+        JMenuItem saveJournal = new JMenuItem("Save Journal...");
         JMenuItem exit = new JMenuItem("Exit");
+        JMenu edit = new JMenu("Edit");
+        JMenuItem undo = new JMenuItem("Undo");
+        JMenuItem redo = new JMenuItem("Redo");
         JMenu difficulty = new JMenu("Difficulty");
         ButtonGroup buttonGroup = new ButtonGroup();
         JMenuItem easy = new JRadioButtonMenuItem("Easy");
@@ -30,9 +48,54 @@ public class ControlPanel extends JMenuBar {
                 ControlPanel.this.model.revealMines();
             }
         };
+        ActionListener hintsListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                firePropertyChange("showHints",
+                                   !hints.isSelected(),
+                                   hints.isSelected());
+            }
+        };
+        ActionListener noGuessListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                setNoGuessing(noGuess.isSelected());
+            }
+        };
+        ActionListener safeOpeningListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                ControlPanel.this.model.setFirstClick(
+                    safeOpening.isSelected()
+                    ? Minesweeper.FirstClick.SAFE_OPENING
+                    : Minesweeper.FirstClick.SAFE_SPOT);
+            }
+        };
         ActionListener restartListener = new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                ControlPanel.this.model.reset();
+                restart();
+            }
+        };
+        ActionListener saveListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                save();
+            }
+        };
+        ActionListener loadListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                load();
+            }
+        };
+        ActionListener saveJournalListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                saveJournal();
+            }
+        };
+        ActionListener undoListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                ControlPanel.this.model.undo();
+            }
+        };
+        ActionListener redoListener = new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                ControlPanel.this.model.redo();
             }
         };
         ActionListener exitListener = new ActionListener() {
@@ -49,18 +112,39 @@ public class ControlPanel extends JMenuBar {
 
         // Game menu
         reveal.addActionListener(revealListener);
+        hints.addActionListener(hintsListener);
+        noGuess.addActionListener(noGuessListener);
+        safeOpening.addActionListener(safeOpeningListener);
         restart.addActionListener(restartListener);
+        save.addActionListener(saveListener);
+        load.addActionListener(loadListener);
+        saveJournal.addActionListener(saveJournalListener);
         exit.addActionListener(exitListener);
         game.add(reveal);
+        game.add(hints);
+        game.add(noGuess);
+        game.add(safeOpening);
         game.add(restart);
+        game.add(save);
+        game.add(load);
+        game.add(saveJournal);
         game.add(exit);
         add(game);
 
+        // Edit menu
+        undo.setAccelerator(KeyStroke.getKeyStroke("control Z"));
+        redo.setAccelerator(KeyStroke.getKeyStroke("control Y"));
+        undo.addActionListener(undoListener);
+        redo.addActionListener(redoListener);
+        edit.add(undo);
+        edit.add(redo);
+        add(edit);
+
         // Difficulty menu
         medium.setSelected(true);
-        easy.setActionCommand("10");
-        medium.setActionCommand("15");
-        hard.setActionCommand("20");
+        easy.setActionCommand("" + DIFFICULTIES[0]);
+        medium.setActionCommand("" + DIFFICULTIES[1]);
+        hard.setActionCommand("" + DIFFICULTIES[2]);
         easy.addActionListener(difficultyListener);
         medium.addActionListener(difficultyListener);
         hard.addActionListener(difficultyListener);
@@ -75,6 +159,102 @@ public class ControlPanel extends JMenuBar {
 
     private void setNumMines(int numMines) {
         model.setNumMines(numMines);
+        restart();
+    }
+
+    /**
+     * Asks for a file and saves the game to it.
+     */
+    private void save() {
+        JFileChooser chooser = new JFileChooser();
+        if(chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            model.save(chooser.getSelectedFile());
+        } catch(IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Failed to save the game: " + e.getMessage(),
+                "Save", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Asks for a file and saves the
+     * journal of moves to it, for Replay.
+     */
+    private void saveJournal() {
+        JFileChooser chooser = new JFileChooser();
+        if(chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            model.getJournal().save(chooser.getSelectedFile());
+        } catch(IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Failed to save the journal: " + e.getMessage(),
+                "Save Journal", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Asks for a file and loads the game
+     * from it.
+     */
+    private void load() {
+        JFileChooser chooser = new JFileChooser();
+        if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            model.load(chooser.getSelectedFile());
+        } catch(IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Failed to load the game: " + e.getMessage(),
+                "Load", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Sets whether new games are taken from
+     * a pool of boards that can be won without
+     * guessing. The pool starts generating
+     * boards for every difficulty in the
+     * background the first time it is needed.
+     *
+     * @param noGuessing True iff new games
+     *                   shouldn't need guessing
+     */
+    private void setNoGuessing(boolean noGuessing) {
+        this.noGuessing = noGuessing;
+        if(noGuessing && pool == null) {
+            pool = new BoardPool(model.getSize(), 8);
+            for(int numMines : DIFFICULTIES) {
+                pool.prepare(numMines);
+            }
+        }
+    }
+
+    /**
+     * Starts a new game. With no guessing on,
+     * takes a ready board from the pool, or
+     * falls back to a random board if none
+     * is ready, so the EDT never waits.
+     */
+    private void restart() {
+        if(noGuessing && pool.getSize() != model.getSize()) {
+            // A game of another size was loaded
+            pool.shutdown();
+            pool = null;
+            setNoGuessing(true);
+        }
+        if(noGuessing) {
+            BoardPool.Board board = pool.take(model.getNumMines());
+            if(board != null) {
+                model.reset(board);
+                return;
+            }
+        }
         model.reset();
     }
 }
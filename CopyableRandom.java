@@ -0,0 +1,58 @@
+import java.util.Random;
+public class CopyableRandom extends Random {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    // The generator's 48-bit state, left without an
+    // initialiser as Random's constructor sets it
+    private long state;
+
+    /**
+     * Creates a CopyableRandom that produces
+     * the same numbers as a Random with the
+     * given seed would.
+     *
+     * @param seed The seed
+     */
+    public CopyableRandom(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Returns a generator in the same state,
+     * that goes on to produce the same numbers
+     * as this one, independently of it.
+     *
+     * @return a copy of the generator
+     */
+    public CopyableRandom copy() {
+        CopyableRandom copy = new CopyableRandom(0);
+        copy.state = state;
+        return copy;
+    }
+
+    /**
+     * Sets the seed as Random does.
+     *
+     * @param seed The seed
+     */
+    public void setSeed(long seed) {
+        super.setSeed(seed);
+        state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    /**
+     * Steps the generator with the same linear
+     * congruential formula as Random, so every
+     * method built on it gives the same results.
+     *
+     * @param bits The number of random bits
+     *
+     * @return the next random bits
+     */
+    protected int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int)(state >>> (48 - bits));
+    }
+}
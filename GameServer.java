@@ -0,0 +1,533 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+public class GameServer {
+    // Line-based protocol, one reply line per request:
+    // NEW size mines [seed] -> GAME id
+    // REVEAL id x y         -> OK cells state
+    // FLAG id x y           -> OK flags state
+    // STATE id              -> STATE state revealed flags
+    // END id                -> OK
+    // QUIT                  -> closes the connection
+    // Any failure           -> ERROR message
+    // Connections may share a game by its id.
+    // Connections past the limit are sent
+    // ERROR and closed.
+    public static final int DEFAULT_PORT = 4321;
+    public static final int DEFAULT_MAX_CONNECTIONS = 1000;
+    public static final int DEFAULT_MAX_GAMES = 10000;
+    // A game holds about two bytes per spot (its
+    // board, and the concurrent copy played on),
+    // so the default keeps the games' boards to
+    // about 256MB of heap. Size the heap to fit
+    // the budget given.
+    public static final long DEFAULT_MAX_SPOTS = 1L << 27;
+    public static final int MAX_SIZE = 1024;
+
+    private ServerSocket serverSocket;
+    private ExecutorService connections;
+    private ScheduledExecutorService evictor;
+    private ConcurrentHashMap<Long, Session> sessions;
+    private AtomicLong nextId;
+    private long idleMillis;
+    // The limits that keep one client from
+    // using up the threads and the memory
+    private int maxConnections;
+    private int maxGames;
+    private long maxSpots;
+    private AtomicInteger numConnections;
+    // The spots in every game in progress,
+    // changed only along with sessions
+    private AtomicLong numSpots;
+
+    /**
+     * Creates a GameServer listening on the
+     * given port, with the default limits on
+     * connections, games and spots. Games not
+     * used for the given time are ended to
+     * free the memory held.
+     *
+     * @param port The port, or 0 for any free one
+     * @param idleMillis How long a game may go
+     *                   unused, in milliseconds
+     *
+     * @throws IOException if the port can't be bound
+     */
+    public GameServer(int port, long idleMillis) throws IOException {
+        this(port, idleMillis, DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_GAMES);
+    }
+
+    /**
+     * Creates a GameServer listening on the
+     * given port, with the default limit on
+     * the spots in all games together.
+     *
+     * @param port The port, or 0 for any free one
+     * @param idleMillis How long a game may go
+     *                   unused, in milliseconds
+     * @param maxConnections The most connections
+     *                       served at once
+     * @param maxGames The most games in progress
+     *
+     * @throws IllegalArgumentException if either
+     *         maximum is less than 1
+     * @throws IOException if the port can't be bound
+     *
+     * @see #GameServer(int, long, int, int, long)
+     */
+    public GameServer(int port, long idleMillis, int maxConnections,
+                      int maxGames) throws IOException {
+        this(port, idleMillis, maxConnections, maxGames, DEFAULT_MAX_SPOTS);
+    }
+
+    /**
+     * Creates a GameServer listening on the
+     * given port. Games not used for the given
+     * time are ended to free the memory held.
+     * Connections past the given maximum are
+     * refused, as are new games past the most
+     * games or the most spots in all games.
+     * The games' memory is bounded by the spots,
+     * at about two bytes each.
+     *
+     * @param port The port, or 0 for any free one
+     * @param idleMillis How long a game may go
+     *                   unused, in milliseconds
+     * @param maxConnections The most connections
+     *                       served at once
+     * @param maxGames The most games in progress
+     * @param maxSpots The most spots in all
+     *                 games in progress together
+     *
+     * @throws IllegalArgumentException if any
+     *         maximum is less than 1
+     * @throws IOException if the port can't be bound
+     */
+    public GameServer(int port, long idleMillis, int maxConnections,
+                      int maxGames, long maxSpots) throws IOException {
+        if(maxConnections < 1 || maxGames < 1 || maxSpots < 1) {
+            throw new IllegalArgumentException(
+                "The server must allow at least one connection, game and spot.");
+        }
+        this.maxConnections = maxConnections;
+        this.maxGames = maxGames;
+        this.maxSpots = maxSpots;
+        this.numConnections = new AtomicInteger();
+        this.numSpots = new AtomicLong();
+        this.serverSocket = new ServerSocket(port, 1024);
+        this.connections = newThreadPerTaskExecutor("GameServer connection");
+        this.sessions = new ConcurrentHashMap<Long, Session>();
+        this.nextId = new AtomicLong();
+        this.idleMillis = idleMillis;
+        this.evictor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "GameServer evictor");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    }
+
+    /**
+     * The program's entry point.
+     * Optionally takes the port, the idle
+     * timeout in seconds, the most connections,
+     * the most games and the most spots in all
+     * games as arguments.
+     *
+     * @param args The command-line arguments
+     *
+     * @throws IOException if the port can't be bound
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long idle = args.length > 1 ? Long.parseLong(args[1]) : 300;
+        int maxConnections = args.length > 2
+            ? Integer.parseInt(args[2]) : DEFAULT_MAX_CONNECTIONS;
+        int maxGames = args.length > 3
+            ? Integer.parseInt(args[3]) : DEFAULT_MAX_GAMES;
+        long maxSpots = args.length > 4
+            ? Long.parseLong(args[4]) : DEFAULT_MAX_SPOTS;
+        GameServer server = new GameServer(port, idle * 1000, maxConnections,
+                                           maxGames, maxSpots);
+        Metrics.register();
+        Metrics.startLogging(60);
+        System.out.println("Listening on port " + server.getPort() + ".");
+        server.run();
+    }
+
+    /**
+     * Returns an executor that runs each task
+     * on a new virtual thread if the runtime
+     * has them, or on a pooled daemon thread
+     * otherwise. Virtual threads let every
+     * connection block on its socket without
+     * holding an OS thread.
+     *
+     * @param name The name of the threads
+     *
+     * @return the executor
+     */
+    public static ExecutorService newThreadPerTaskExecutor(final String name) {
+        try {
+            Method method = Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)method.invoke(null);
+        } catch(Exception e) {
+            // Virtual threads need Java 21
+        }
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(null, r, name, 256 * 1024);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Returns the number of games in progress.
+     *
+     * @return the number of games
+     */
+    public int getNumSessions() {
+        return sessions.size();
+    }
+
+    /**
+     * Returns the number of spots in
+     * all games in progress together.
+     *
+     * @return the number of spots
+     */
+    public long getNumSpots() {
+        return numSpots.get();
+    }
+
+    /**
+     * Returns the number of connections
+     * being served.
+     *
+     * @return the number of connections
+     */
+    public int getNumConnections() {
+        return numConnections.get();
+    }
+
+    /**
+     * Accepts connections until closed,
+     * serving each on its own thread, up to
+     * the most connections allowed at once.
+     */
+    public void run() {
+        long period = Math.max(1, idleMillis / 2);
+        evictor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        try {
+            while(true) {
+                final Socket socket = serverSocket.accept();
+                if(numConnections.incrementAndGet() > maxConnections) {
+                    numConnections.decrementAndGet();
+                    refuse(socket);
+                    continue;
+                }
+                try {
+                    connections.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                serve(socket);
+                            } finally {
+                                numConnections.decrementAndGet();
+                            }
+                        }
+                    });
+                } catch(RejectedExecutionException e) {
+                    // Closing
+                    numConnections.decrementAndGet();
+                    refuse(socket);
+                }
+            }
+        } catch(IOException e) {
+            // Closed
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Starts accepting connections
+     * on a background thread.
+     */
+    public void start() {
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                GameServer.this.run();
+            }
+        }, "GameServer acceptor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the server, closing every
+     * connection and ending every game.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch(IOException e) {
+            // Already closed
+        }
+        connections.shutdownNow();
+        evictor.shutdownNow();
+        synchronized(sessions) {
+            sessions.clear();
+            numSpots.set(0);
+        }
+    }
+
+    /**
+     * Ends every game that has not been
+     * used within the idle timeout.
+     */
+    private void evictIdle() {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        for(Map.Entry<Long, Session> entry : sessions.entrySet()) {
+            if(entry.getValue().lastUsed < cutoff) {
+                end(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Ends the given game, unless it has
+     * already been ended, freeing its spots.
+     *
+     * @param id The game's id
+     * @param session The game
+     */
+    private void end(long id, Session session) {
+        if(sessions.remove(id, session)) {
+            numSpots.addAndGet(-session.numSpots);
+        }
+    }
+
+    /**
+     * Tells the given connection the server
+     * is full, and closes it. The reply is
+     * short enough to fit in the socket's
+     * buffer, so the acceptor doesn't block.
+     *
+     * @param socket The connection
+     */
+    private static void refuse(Socket socket) {
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write("ERROR Too many connections.\n".getBytes("US-ASCII"));
+            out.flush();
+        } catch(IOException e) {
+            // The client went away
+        } finally {
+            try {
+                socket.close();
+            } catch(IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Answers requests from the given
+     * connection until it is closed.
+     *
+     * @param socket The connection
+     */
+    private void serve(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            Writer out = new BufferedWriter(
+                new OutputStreamWriter(socket.getOutputStream(), "US-ASCII"));
+            String line;
+            while((line = in.readLine()) != null) {
+                if(line.trim().equalsIgnoreCase("QUIT")) {
+                    break;
+                }
+                out.write(handle(line));
+                out.write('\n');
+                // Answer everything already sent before
+                // flushing, so pipelined requests
+                // share a packet
+                if(!in.ready()) {
+                    out.flush();
+                }
+            }
+        } catch(IOException e) {
+            // The client went away
+        } finally {
+            try {
+                socket.close();
+            } catch(IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Carries out a single request.
+     *
+     * @param line The request
+     *
+     * @return the reply
+     */
+    public String handle(String line) {
+        String[] args = line.trim().split("\\s+");
+        try {
+            String command = args[0].toUpperCase();
+            if(command.equals("NEW")) {
+                return newGame(args);
+            }
+            if(args.length < 2) {
+                return "ERROR Missing game id.";
+            }
+            Session session = sessions.get(Long.parseLong(args[1]));
+            if(session == null) {
+                return "ERROR No game " + args[1] + ".";
+            }
+            session.lastUsed = System.currentTimeMillis();
+            if(command.equals("END")) {
+                end(Long.parseLong(args[1]), session);
+                return "OK";
+            }
+            return handle(session.game, command, args);
+        } catch(NumberFormatException e) {
+            return "ERROR Bad number in \"" + line + "\".";
+        } catch(RuntimeException e) {
+            return "ERROR " + e.getMessage();
+        }
+    }
+
+    /**
+     * Starts a new game, unless there are
+     * already as many games, or as many
+     * spots in them, as are allowed.
+     *
+     * @param args The request's words
+     *
+     * @return the reply, naming the game
+     */
+    private String newGame(String[] args) {
+        if(args.length < 3) {
+            return "ERROR Usage: NEW size mines [seed]";
+        }
+        int size = Integer.parseInt(args[1]);
+        int numMines = Integer.parseInt(args[2]);
+        if(size < 1 || size > MAX_SIZE || numMines < 0) {
+            return "ERROR Bad board size or number of mines.";
+        }
+        long spots = (long)size * size;
+        if(sessions.size() >= maxGames) {
+            return "ERROR Too many games.";
+        }
+        if(numSpots.get() + spots > maxSpots) {
+            return "ERROR Too many spots in play.";
+        }
+        Minesweeper game = args.length > 3
+            ? new Minesweeper(size, numMines, Long.parseLong(args[3]))
+            : new Minesweeper(size, numMines);
+        long id = nextId.incrementAndGet();
+        // Games are only added here, so checking
+        // again and adding under the lock keeps
+        // to the limits
+        synchronized(sessions) {
+            if(sessions.size() >= maxGames) {
+                return "ERROR Too many games.";
+            }
+            if(numSpots.get() + spots > maxSpots) {
+                return "ERROR Too many spots in play.";
+            }
+            sessions.put(id, new Session(new ConcurrentMinesweeper(game)));
+            numSpots.addAndGet(spots);
+        }
+        return "GAME " + id;
+    }
+
+    /**
+     * Carries out a request on a game. Games
+     * are safe to play from many connections
+     * at once, so no lock is taken.
+     *
+     * @param game The game
+     * @param command The request's command
+     * @param args The request's words
+     *
+     * @return the reply
+     */
+    private static String handle(ConcurrentMinesweeper game, String command,
+                                 String[] args) {
+        if(command.equals("STATE")) {
+            return "STATE " + game.getState() + " "
+                + game.getNumRevealed() + " " + game.getNumFlags();
+        }
+        if(args.length < 4) {
+            return "ERROR Usage: " + command + " id x y";
+        }
+        int x = Integer.parseInt(args[2]);
+        int y = Integer.parseInt(args[3]);
+        if(x < 0 || y < 0 || x >= game.getSize() || y >= game.getSize()) {
+            return "ERROR " + x + "," + y + " is off the board.";
+        }
+        if(game.getState() != GameState.PLAYING) {
+            return "ERROR The game is over.";
+        }
+        if(command.equals("REVEAL")) {
+            int cells = game.isFlag(x, y) ? 0 : game.reveal(x, y).size();
+            return "OK " + cells + " " + game.getState();
+        }
+        if(command.equals("FLAG")) {
+            game.toggleFlag(x, y);
+            return "OK " + game.getNumFlags() + " " + game.getState();
+        }
+        return "ERROR Unknown command " + command + ".";
+    }
+
+    /**
+     * A game in progress.
+     */
+    private static class Session {
+        private ConcurrentMinesweeper game;
+        private long numSpots;
+        // When the game was last used,
+        // in milliseconds since the epoch
+        private volatile long lastUsed;
+
+        /**
+         * Creates a Session of the given game.
+         *
+         * @param game The game
+         */
+        public Session(ConcurrentMinesweeper game) {
+            this.game = game;
+            this.numSpots = (long)game.getSize() * game.getSize();
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+public enum GameState {
+    /**
+     * The game is still in progress.
+     */
+    PLAYING,
+
+    /**
+     * Every spot that isn't a mine
+     * has been revealed.
+     */
+    WON,
+
+    /**
+     * A mine has been revealed.
+     */
+    LOST
+}
@@ -0,0 +1,180 @@
+import java.util.concurrent.ExecutionException;
+import javax.swing.*;
+public abstract class HintUpdater {
+    private MineModel model;
+    // The calculation running, or null, and whether
+    // the game changed after it took its copy.
+    // Only touched on the event dispatch thread.
+    private Worker worker;
+    private boolean pending;
+
+    /**
+     * Creates a HintUpdater for the given MineModel.
+     * Each request copies the game's visible state
+     * and works out the probabilities on a background
+     * thread, so the event dispatch thread never waits
+     * for them. At most one calculation runs at a
+     * time: requests made while one runs are merged
+     * into a single one started when it finishes.
+     *
+     * @param model The model to calculate hints for
+     */
+    public HintUpdater(MineModel model) {
+        this.model = model;
+    }
+
+    /**
+     * Called on the event dispatch thread
+     * with the probabilities from a request.
+     * A newer request may still be running.
+     *
+     * @param probabilities The probability that each spot
+     *                      is a mine, indexed by x + y*size
+     * @param frontier The unknown spots next to a revealed
+     *                 number: only these have their own
+     *                 probability
+     * @param other The probability shared by every
+     *              other unknown spot, or NaN if
+     *              there are none
+     */
+    protected abstract void hintsChanged(double[] probabilities,
+                                         CellList frontier,
+                                         double other);
+
+    /**
+     * Starts working out the hints for the game
+     * as it is now. Call on the event dispatch
+     * thread, after any change to the game.
+     */
+    public void request() {
+        if(worker != null) {
+            pending = true;
+            return;
+        }
+        // Hold the model still while copying it,
+        // so a reset on another thread can't
+        // change its size part way through
+        synchronized(model) {
+            int size = model.getSize();
+            byte[] state = new byte[size * size];
+            model.exportState(state);
+            worker = new Worker(state, size, model.getNumMines());
+        }
+        worker.execute();
+    }
+
+    /**
+     * Drops any request not yet finished, so
+     * hintsChanged isn't called for it. Call on
+     * the event dispatch thread.
+     */
+    public void cancel() {
+        if(worker != null) {
+            // Cancelling on this thread calls done at
+            // once, which must see it is no longer wanted
+            Worker cancelled = worker;
+            worker = null;
+            cancelled.cancel(false);
+        }
+        pending = false;
+    }
+
+    /**
+     * Works out the hints for a copy
+     * of the game's visible state.
+     */
+    private class Worker extends SwingWorker<double[], Void> {
+        private byte[] state;
+        private int size;
+        private int numMines;
+        // Written by doInBackground and
+        // read by done, which follows it
+        private CellList frontier;
+        private double other;
+
+        /**
+         * Creates a Worker for the given state.
+         *
+         * @param state The visible state of each spot
+         * @param size The size of the board
+         * @param numMines The number of mines
+         */
+        public Worker(byte[] state, int size, int numMines) {
+            this.state = state;
+            this.size = size;
+            this.numMines = numMines;
+        }
+
+        /**
+         * Works out the probabilities, and which
+         * spots are next to a revealed number.
+         *
+         * @return the probabilities
+         */
+        protected double[] doInBackground() {
+            double[] probabilities =
+                model.getMineProbabilities(state, size, numMines);
+            frontier = new CellList();
+            other = Double.NaN;
+            for(int y = 0; y < size; y++) {
+                for(int x = 0; x < size; x++) {
+                    byte spot = state[x + y*size];
+                    if(spot != Minesweeper.HIDDEN && spot != Minesweeper.FLAGGED) {
+                        continue;
+                    }
+                    if(nextToNumber(x, y)) {
+                        frontier.add(x + y*size);
+                    } else {
+                        other = probabilities[x + y*size];
+                    }
+                }
+            }
+            return probabilities;
+        }
+
+        /**
+         * Returns true iff the spot at x,y
+         * is next to a revealed number.
+         *
+         * @param x The x co-ord
+         * @param y The y co-ord
+         *
+         * @return true iff it is next to a number
+         */
+        private boolean nextToNumber(int x, int y) {
+            for(int ny = Math.max(0, y - 1); ny <= Math.min(size - 1, y + 1); ny++) {
+                for(int nx = Math.max(0, x - 1); nx <= Math.min(size - 1, x + 1); nx++) {
+                    if(state[nx + ny*size] <= 8) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Passes the hints on, unless the request was
+         * cancelled, and starts the next request if
+         * the game changed while this one ran.
+         */
+        protected void done() {
+            if(worker != this) {
+                return;
+            }
+            worker = null;
+            if(pending) {
+                pending = false;
+                request();
+            }
+            try {
+                hintsChanged(get(), frontier, other);
+            } catch(InterruptedException e) {
+                // done is only called once the
+                // result is ready, so get won't wait
+                Thread.currentThread().interrupt();
+            } catch(ExecutionException e) {
+                throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+            }
+        }
+    }
+}
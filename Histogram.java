@@ -0,0 +1,132 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+public class Histogram {
+    // One bucket per power of two: bucket b holds
+    // values from 2^(b-1) up to 2^b - 1, and
+    // bucket 0 holds zero and below
+    private static final int BUCKETS = 64;
+
+    private LongAdder[] buckets;
+    private LongAdder sum;
+    private AtomicLong max;
+
+    /**
+     * Creates an empty Histogram. Recording a
+     * value is a few uncontended additions,
+     * so it is cheap enough for hot paths and
+     * safe from any number of threads.
+     */
+    public Histogram() {
+        buckets = new LongAdder[BUCKETS];
+        for(int b = 0; b < BUCKETS; b++) {
+            buckets[b] = new LongAdder();
+        }
+        sum = new LongAdder();
+        max = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value The value
+     */
+    public void record(long value) {
+        buckets[bucket(value)].increment();
+        sum.add(value);
+        long current = max.get();
+        while(value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the number of values recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for(LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return the mean, or 0 if there are none
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double)sum.sum() / count;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return the largest value, or 0
+     *         if there are none
+     */
+    public long getMax() {
+        long value = max.get();
+        return value == Long.MIN_VALUE ? 0 : value;
+    }
+
+    /**
+     * Returns an upper bound on the given
+     * percentile of the values recorded:
+     * the top of the bucket it falls in,
+     * so at most twice the true value.
+     *
+     * @param p The percentile, 0 to 100
+     *
+     * @return the bound, or 0 if there
+     *         are no values
+     */
+    public long getPercentile(double p) {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for(int b = 0; b < BUCKETS; b++) {
+            counts[b] = buckets[b].sum();
+            count += counts[b];
+        }
+        if(count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long)Math.ceil(p / 100 * count));
+        long seen = 0;
+        for(int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if(seen >= rank) {
+                return Math.min(getMax(), b == 0 ? 0 : (1L << b) - 1);
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Forgets every value recorded.
+     */
+    public void reset() {
+        for(LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        sum.reset();
+        max.set(Long.MIN_VALUE);
+    }
+
+    /**
+     * Returns the bucket a value falls in.
+     *
+     * @param value The value
+     *
+     * @return the bucket
+     */
+    private static int bucket(long value) {
+        if(value <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.ArrayList;
+import java.util.List;
+public class History {
+    // Moves that can be undone, most recent last,
+    // and moves that were undone and can be redone
+    private List<Move> undoable;
+    private List<Move> redoable;
+
+    /**
+     * Creates an empty History.
+     */
+    public History() {
+        undoable = new ArrayList<Move>();
+        redoable = new ArrayList<Move>();
+    }
+
+    /**
+     * Returns a History with the same moves.
+     * Moves never change once made, so
+     * they are shared with the copy.
+     *
+     * @return the copy
+     */
+    public History copy() {
+        History copy = new History();
+        copy.undoable.addAll(undoable);
+        copy.redoable.addAll(redoable);
+        return copy;
+    }
+
+    /**
+     * Adds a new move, which can no
+     * longer be followed by a redo.
+     *
+     * @param move The move
+     */
+    public void add(Move move) {
+        undoable.add(move);
+        redoable.clear();
+    }
+
+    /**
+     * Forgets every move.
+     */
+    public void clear() {
+        undoable.clear();
+        redoable.clear();
+    }
+
+    /**
+     * Returns true iff there is a move to undo.
+     *
+     * @return true iff there is a move to undo
+     */
+    public boolean canUndo() {
+        return !undoable.isEmpty();
+    }
+
+    /**
+     * Returns true iff there is a move to redo.
+     *
+     * @return true iff there is a move to redo
+     */
+    public boolean canRedo() {
+        return !redoable.isEmpty();
+    }
+
+    /**
+     * Moves the most recent move
+     * onto the redo list.
+     *
+     * @return the move to undo,
+     *         or null if there is none
+     */
+    public Move undo() {
+        if(undoable.isEmpty()) {
+            return null;
+        }
+        Move move = undoable.remove(undoable.size() - 1);
+        redoable.add(move);
+        return move;
+    }
+
+    /**
+     * Moves the most recently undone
+     * move back onto the undo list.
+     *
+     * @return the move to redo,
+     *         or null if there is none
+     */
+    public Move redo() {
+        if(redoable.isEmpty()) {
+            return null;
+        }
+        Move move = redoable.remove(redoable.size() - 1);
+        undoable.add(move);
+        return move;
+    }
+
+    /**
+     * A change to the board, stored as just
+     * the spots it changed so that it can be
+     * reversed, rather than as a copy of the
+     * board.
+     */
+    public static class Move {
+        private boolean flag;
+        private CellList cells;
+        private int[] moved;
+
+        /**
+         * Creates a Move.
+         *
+         * @param flag True for a flag toggle, false
+         *             for spots being revealed
+         * @param cells The spots that changed
+         * @param moved The mines moved off the first
+         *              spot revealed, as pairs of
+         *              from and to indices, or null
+         */
+        public Move(boolean flag, CellList cells, int[] moved) {
+            this.flag = flag;
+            this.cells = cells;
+            this.moved = moved;
+        }
+
+        /**
+         * Returns true iff this toggled a flag
+         * rather than revealing spots.
+         *
+         * @return true iff this toggled a flag
+         */
+        public boolean isFlag() {
+            return flag;
+        }
+
+        /**
+         * Returns the spots that changed.
+         *
+         * @return the spots that changed
+         */
+        public CellList getCells() {
+            return cells;
+        }
+
+        /**
+         * Returns the mines moved off the first
+         * spot revealed, as pairs of from and
+         * to indices, or null if this wasn't
+         * the first reveal.
+         *
+         * @return the mines moved, or null
+         */
+        public int[] getMoved() {
+            return moved;
+        }
+    }
+}
@@ -0,0 +1,311 @@
+import java.io.*;
+import java.nio.*;
+import java.util.Arrays;
+public class Journal {
+    // Opcodes, each followed by its operands:
+    // RESET: size, mines, first click, then seed
+    // REVEAL, FLAG, CHORD: the spot's index
+    // REVEAL_MINES: nothing
+    // FIRST_CLICK: the setting's ordinal
+    // LOAD: its length, then the saved game
+    // UNDO, REDO: nothing
+    // All but the seed and saved game are varints
+    public static final int
+        RESET = 0,
+        REVEAL = 1,
+        FLAG = 2,
+        REVEAL_MINES = 3,
+        FIRST_CLICK = 4,
+        LOAD = 5,
+        UNDO = 6,
+        REDO = 7,
+        CHORD = 8;
+
+    private static final int FILE_MAGIC = 0x4D53574A; // "MSWJ"
+    private static final int FILE_VERSION = 1;
+
+    private byte[] bytes;
+    private int length;
+    private int numMoves;
+
+    /**
+     * Creates an empty Journal.
+     */
+    public Journal() {
+        bytes = new byte[64];
+        length = 0;
+        numMoves = 0;
+    }
+
+    /**
+     * Records that the given game was
+     * reset to a new board.
+     *
+     * @param minesweeper The game, just after
+     *                    being reset
+     */
+    public void recordReset(Minesweeper minesweeper) {
+        writeByte(RESET);
+        writeVarInt(minesweeper.getSize());
+        writeVarInt(minesweeper.getNumMines());
+        writeVarInt(minesweeper.getFirstClick().ordinal());
+        writeLong(minesweeper.getSeed());
+        numMoves++;
+    }
+
+    /**
+     * Records the whole state of the given
+     * game, for games that can't be rebuilt
+     * from a seed, such as loaded ones.
+     *
+     * @param minesweeper The game
+     */
+    public void recordLoad(Minesweeper minesweeper) {
+        int saveLength = (int)minesweeper.getSaveLength();
+        writeByte(LOAD);
+        writeVarInt(saveLength);
+        ensureCapacity(saveLength);
+        minesweeper.save(ByteBuffer.wrap(bytes, length, saveLength));
+        length += saveLength;
+        numMoves++;
+    }
+
+    /**
+     * Records a reveal of the given spot.
+     *
+     * @param cell The spot's index (x + y*size)
+     */
+    public void recordReveal(int cell) {
+        writeByte(REVEAL);
+        writeVarInt(cell);
+        numMoves++;
+    }
+
+    /**
+     * Records a flag toggle on the given spot.
+     *
+     * @param cell The spot's index (x + y*size)
+     */
+    public void recordFlag(int cell) {
+        writeByte(FLAG);
+        writeVarInt(cell);
+        numMoves++;
+    }
+
+    /**
+     * Records a chord on the given spot.
+     *
+     * @param cell The spot's index (x + y*size)
+     */
+    public void recordChord(int cell) {
+        writeByte(CHORD);
+        writeVarInt(cell);
+        numMoves++;
+    }
+
+    /**
+     * Records that all mines were revealed.
+     */
+    public void recordRevealMines() {
+        writeByte(REVEAL_MINES);
+        numMoves++;
+    }
+
+    /**
+     * Records that the last move was undone.
+     */
+    public void recordUndo() {
+        writeByte(UNDO);
+        numMoves++;
+    }
+
+    /**
+     * Records that the last undone
+     * move was redone.
+     */
+    public void recordRedo() {
+        writeByte(REDO);
+        numMoves++;
+    }
+
+    /**
+     * Records a new first click setting.
+     *
+     * @param firstClick The setting
+     */
+    public void recordFirstClick(Minesweeper.FirstClick firstClick) {
+        writeByte(FIRST_CLICK);
+        writeVarInt(firstClick.ordinal());
+        numMoves++;
+    }
+
+    /**
+     * Returns the number of moves recorded.
+     *
+     * @return the number of moves recorded
+     */
+    public int getNumMoves() {
+        return numMoves;
+    }
+
+    /**
+     * Returns the number of bytes recorded.
+     *
+     * @return the number of bytes recorded
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns a read-only view of the
+     * recorded bytes, for Replay.
+     *
+     * @return the recorded bytes
+     */
+    public ByteBuffer getBytes() {
+        return ByteBuffer.wrap(bytes, 0, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the journal to the given file.
+     *
+     * @param file The file to write to
+     *
+     * @throws IOException if writing failed
+     */
+    public void save(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(numMoves);
+            out.writeInt(length);
+            out.write(bytes, 0, length);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads a journal written by save.
+     *
+     * @param file The file to read from
+     *
+     * @return the journal
+     *
+     * @throws IOException if reading failed, or
+     *         the file isn't a journal
+     */
+    public static Journal load(File file) throws IOException {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if(in.readInt() != FILE_MAGIC) {
+                throw new IOException("\"" + file + "\" is not a journal.");
+            }
+            int version = in.readInt();
+            if(version != FILE_VERSION) {
+                throw new IOException(
+                    "Unsupported journal version " + version + ".");
+            }
+            Journal journal = new Journal();
+            journal.numMoves = in.readInt();
+            journal.length = in.readInt();
+            if(journal.numMoves < 0 || journal.length < 0) {
+                throw new IOException("\"" + file + "\" is corrupt.");
+            }
+            journal.bytes = new byte[Math.max(journal.length, 1)];
+            in.readFully(journal.bytes, 0, journal.length);
+            return journal;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads an unsigned variable-length int
+     * written by writeVarInt: seven bits per
+     * byte, low bits first, with the top bit
+     * set on every byte but the last.
+     *
+     * @param buffer The buffer to read from
+     *
+     * @return the int
+     */
+    public static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buffer.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Reads a long written by writeLong:
+     * eight bytes, low byte first.
+     *
+     * @param buffer The buffer to read from
+     *
+     * @return the long
+     */
+    public static long readLong(ByteBuffer buffer) {
+        long value = 0;
+        for(int i = 0; i < 8; i++) {
+            value |= (buffer.get() & 0xFFL) << (8 * i);
+        }
+        return value;
+    }
+
+    /**
+     * Appends a long, low byte first.
+     *
+     * @param value The long
+     */
+    private void writeLong(long value) {
+        for(int i = 0; i < 8; i++) {
+            writeByte((int)(value >>> (8 * i)));
+        }
+    }
+
+    /**
+     * Appends an unsigned variable-length int.
+     *
+     * @param value The int, at least 0
+     */
+    private void writeVarInt(int value) {
+        while((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    /**
+     * Appends a byte.
+     *
+     * @param b The byte, in the low 8 bits
+     */
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        bytes[length++] = (byte)b;
+    }
+
+    /**
+     * Grows the array so the given number
+     * of bytes can be appended.
+     *
+     * @param extra The number of bytes
+     */
+    private void ensureCapacity(int extra) {
+        if(length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes,
+                Math.max(length + extra, bytes.length * 2));
+        }
+    }
+}
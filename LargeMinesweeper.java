@@ -0,0 +1,533 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Random;
+public class LargeMinesweeper {
+    private int width;
+    private int height;
+    private long numCells;
+    private long numMines;
+    // One bit per spot, indexed by x + y*width
+    // as a long, so three bits per spot in all.
+    // Adjacent mine counts are worked out from
+    // the mines as needed rather than stored.
+    private BitPlane mines;
+    private BitPlane revealed;
+    private BitPlane flags;
+    // Running totals, kept up to date by every change
+    private long revealedSafe;
+    private long revealedMines;
+    private long numFlags;
+    private long seed;
+    private Random rgen;
+    private boolean started;
+    // True until the planes are first written,
+    // as new planes are already clear
+    private boolean clear = true;
+
+    /**
+     * Generates the board of the given width and
+     * height with the given number of mines that
+     * the given seed produces, held in direct
+     * buffers outside the Java heap.
+     *
+     * @param width The width of the board
+     * @param height The height of the board
+     * @param numMines The number of mines in the board
+     * @param seed The seed of the board
+     *
+     * @throws IllegalArgumentException if the board
+     *         is empty, or there are too many mines
+     */
+    public LargeMinesweeper(int width, int height, long numMines, long seed) {
+        init(width, height, numMines);
+        long numCells = (long)width * height;
+        this.mines = BitPlane.allocate(numCells);
+        this.revealed = BitPlane.allocate(numCells);
+        this.flags = BitPlane.allocate(numCells);
+        reset(seed);
+    }
+
+    /**
+     * Generates the board of the given width and
+     * height with the given number of mines that
+     * the given seed produces, held in the given
+     * file, which is replaced. The file is mapped
+     * into memory, so boards bigger than the
+     * memory available can be played, with only
+     * the parts in use paged in.
+     *
+     * @param width The width of the board
+     * @param height The height of the board
+     * @param numMines The number of mines in the board
+     * @param seed The seed of the board
+     * @param file The file to hold the board
+     *
+     * @throws IllegalArgumentException if the board
+     *         is empty, or there are too many mines
+     * @throws IOException if the file can't be mapped
+     */
+    public LargeMinesweeper(int width, int height, long numMines, long seed,
+                            File file) throws IOException {
+        init(width, height, numMines);
+        long numCells = (long)width * height;
+        long planeSize = BitPlane.getByteSize(numCells);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            this.mines = BitPlane.map(channel, 0, numCells);
+            this.revealed = BitPlane.map(channel, planeSize, numCells);
+            this.flags = BitPlane.map(channel, planeSize * 2, numCells);
+        } finally {
+            // The mappings outlive the file being closed
+            raf.close();
+        }
+        reset(seed);
+    }
+
+    /**
+     * Checks and sets the dimensions
+     * and number of mines.
+     *
+     * @param width The width of the board
+     * @param height The height of the board
+     * @param numMines The number of mines in the board
+     *
+     * @throws IllegalArgumentException if the board
+     *         is empty, or there are too many mines
+     */
+    private void init(int width, int height, long numMines) {
+        if(width < 1 || height < 1) {
+            throw new IllegalArgumentException(
+                "A board must be at least 1x1.");
+        }
+        if(numMines < 0 || numMines > (long)width * height) {
+            throw new IllegalArgumentException(
+                "You cannot have more mines than there are " +
+                "spaces on the board to hold them.");
+        }
+        this.width = width;
+        this.height = height;
+        this.numCells = (long)width * height;
+        this.numMines = numMines;
+    }
+
+    /**
+     * Generates the board that the given seed
+     * produces, clearing the current one.
+     *
+     * @param seed The seed of the board
+     */
+    public void reset(long seed) {
+        long startTime = System.nanoTime();
+        this.seed = seed;
+        rgen = new Random(seed);
+        started = false;
+        // Pick whichever of the mines and the
+        // safe spots are fewer, so at worst
+        // half the spots are tried
+        boolean sparse = numMines <= numCells - numMines;
+        if(!clear) {
+            // Clearing touches every page, so
+            // new boards, mapped or not, skip it
+            revealed.fill(false);
+            flags.fill(false);
+            mines.fill(false);
+        }
+        clear = false;
+        if(!sparse) {
+            mines.fill(true);
+        }
+        long toPlace = sparse ? numMines : numCells - numMines;
+        while(toPlace > 0) {
+            long cell = nextCell();
+            if(mines.get(cell) != sparse) {
+                mines.set(cell, sparse);
+                toPlace--;
+            }
+        }
+        revealedSafe = 0;
+        revealedMines = 0;
+        numFlags = 0;
+        Metrics.RESET_NANOS.record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Returns the width of the board.
+     *
+     * @return the width of the board
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the board.
+     *
+     * @return the height of the board
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the number of spots on the board.
+     *
+     * @return the number of spots
+     */
+    public long getNumCells() {
+        return numCells;
+    }
+
+    /**
+     * Returns the number of mines in the board.
+     *
+     * @return the number of mines in the board
+     */
+    public long getNumMines() {
+        return numMines;
+    }
+
+    /**
+     * Returns the seed of the current board.
+     *
+     * @return the seed of the current board
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns true iff the spot
+     * at x,y is revealed.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff the spot at
+     *              x,y is revealed
+     */
+    public boolean isRevealed(int x, int y) {
+        return revealed.get(index(x, y));
+    }
+
+    /**
+     * Returns true iff the spot
+     * at x,y is a mine.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff the spot at
+     *              x,y is a mine
+     */
+    public boolean isMine(int x, int y) {
+        return mines.get(index(x, y));
+    }
+
+    /**
+     * Returns true iff the spot
+     * at x,y is flagged.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff the spot at
+     *              x,y is flagged
+     */
+    public boolean isFlag(int x, int y) {
+        return flags.get(index(x, y));
+    }
+
+    /**
+     * Returns the number of mines
+     * adjacent to x,y.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the number of mines
+     *         adjacent to x,y
+     */
+    public int getNumAdjacentMines(int x, int y) {
+        int count = 0;
+        for(int j = Math.max(0, y - 1); j <= Math.min(height - 1, y + 1); j++) {
+            for(int i = Math.max(0, x - 1); i <= Math.min(width - 1, x + 1); i++) {
+                if((i != x || j != y) && mines.get(index(i, j))) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the state of the game.
+     *
+     * @return the state of the game
+     */
+    public GameState getState() {
+        if(revealedMines > 0) {
+            return GameState.LOST;
+        }
+        if(revealedSafe == numCells - numMines) {
+            return GameState.WON;
+        }
+        return GameState.PLAYING;
+    }
+
+    /**
+     * Returns the number of revealed spots.
+     *
+     * @return the number of revealed spots
+     */
+    public long getNumRevealed() {
+        return revealedSafe + revealedMines;
+    }
+
+    /**
+     * Returns the number of flagged spots.
+     *
+     * @return the number of flagged spots
+     */
+    public long getNumFlags() {
+        return numFlags;
+    }
+
+    /**
+     * Toggles whether x,y is flagged,
+     * unless it has been revealed.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff the flag was toggled
+     */
+    public boolean toggleFlag(int x, int y) {
+        long cell = index(x, y);
+        if(revealed.get(cell)) {
+            return false;
+        }
+        boolean flagged = !flags.get(cell);
+        flags.set(cell, flagged);
+        numFlags += flagged ? 1 : -1;
+        return true;
+    }
+
+    /**
+     * Reveals x,y as Minesweeper.reveal does,
+     * moving a mine off the first spot revealed.
+     * The board may be far too big to list the
+     * spots opened, so only their number is
+     * returned.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the number of spots opened
+     */
+    public long reveal(int x, int y) {
+        long startTime = System.nanoTime();
+        long start = index(x, y);
+        if(revealed.get(start)) {
+            return 0;
+        }
+        if(!started) {
+            started = true;
+            makeSafe(start);
+        }
+        revealed.set(start, true);
+        long opened;
+        if(mines.get(start)) {
+            // Reveal every mine
+            opened = 1 + revealed.or(mines);
+            revealedMines += opened;
+        } else {
+            opened = flood(start);
+            revealedSafe += opened;
+        }
+        Metrics.REVEAL_NANOS.record(System.nanoTime() - startTime);
+        Metrics.FLOOD_SIZE.record(opened);
+        return opened;
+    }
+
+    /**
+     * Floods outwards from the given revealed
+     * safe spot, revealing until spots with
+     * adjacent mines or the edges are reached.
+     * The queue holds only the flood's frontier,
+     * not every spot opened.
+     *
+     * @param start The spot's index
+     *
+     * @return the number of spots opened,
+     *         including the start
+     */
+    private long flood(long start) {
+        long opened = 1;
+        LongQueue queue = new LongQueue();
+        queue.add(start);
+        while(!queue.isEmpty()) {
+            long cell = queue.remove();
+            int cx = (int)(cell % width);
+            int cy = (int)(cell / width);
+            if(getNumAdjacentMines(cx, cy) != 0) continue;
+            for(int j = Math.max(0, cy - 1); j <= Math.min(height - 1, cy + 1); j++) {
+                for(int i = Math.max(0, cx - 1); i <= Math.min(width - 1, cx + 1); i++) {
+                    long neighbour = index(i, j);
+                    if(!revealed.get(neighbour)) {
+                        revealed.set(neighbour, true);
+                        queue.add(neighbour);
+                        opened++;
+                    }
+                }
+            }
+        }
+        return opened;
+    }
+
+    /**
+     * Writes the visible state of each spot in
+     * the given rectangle into the given array,
+     * a row at a time, as Minesweeper.exportState
+     * does, so a view can show part of the board.
+     *
+     * @param x The x co-ord of the top left spot
+     * @param y The y co-ord of the top left spot
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     * @param dest The array to write into
+     * @param offset Where in the array to start
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the rectangle isn't on the board,
+     *         or doesn't fit in the array
+     *
+     * @see Minesweeper#exportState(int, int, int, int, byte[], int)
+     */
+    public void exportState(int x, int y, int width, int height,
+                            byte[] dest, int offset) {
+        if(x < 0 || y < 0 || width < 0 || height < 0
+        || x > this.width - width || y > this.height - height) {
+            throw new IndexOutOfBoundsException(
+                width + "x" + height + " at " + x + "," + y + " is off the "
+                + this.width + "x" + this.height + " board.");
+        }
+        if(offset < 0 || dest.length - offset < (long)width * height) {
+            throw new IndexOutOfBoundsException(
+                width + "x" + height + " spots don't fit in "
+                + dest.length + " bytes from " + offset + ".");
+        }
+        for(int j = y; j < y + height; j++) {
+            for(int i = x; i < x + width; i++) {
+                long cell = index(i, j);
+                byte state;
+                if(revealed.get(cell)) {
+                    state = mines.get(cell)
+                        ? Minesweeper.REVEALED_MINE
+                        : (byte)getNumAdjacentMines(i, j);
+                } else {
+                    state = flags.get(cell)
+                        ? Minesweeper.FLAGGED
+                        : Minesweeper.HIDDEN;
+                }
+                dest[offset++] = state;
+            }
+        }
+    }
+
+    /**
+     * Moves the mine at the given spot, if
+     * there is one, to a random empty spot.
+     *
+     * @param cell The spot's index
+     */
+    private void makeSafe(long cell) {
+        if(!mines.get(cell) || numMines == numCells) {
+            return;
+        }
+        long to;
+        do {
+            to = nextCell();
+        } while(mines.get(to));
+        mines.set(cell, false);
+        mines.set(to, true);
+    }
+
+    /**
+     * Returns a random spot's index,
+     * every spot being equally likely.
+     *
+     * @return the index
+     */
+    private long nextCell() {
+        long bits, cell;
+        do {
+            bits = rgen.nextLong() >>> 1;
+            cell = bits % numCells;
+        } while(bits - cell + (numCells - 1) < 0);
+        return cell;
+    }
+
+    /**
+     * Returns the index of x,y
+     * in the bit planes.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the index of x,y
+     */
+    private long index(int x, int y) {
+        return x + (long)y * width;
+    }
+
+    /**
+     * A first-in first-out queue of spot
+     * indices, in a ring that grows as
+     * needed and never shrinks.
+     */
+    private static class LongQueue {
+        private long[] ring = new long[1024];
+        private int head;
+        private int size;
+
+        /**
+         * Adds a spot to the back of the queue.
+         *
+         * @param cell The spot's index
+         */
+        public void add(long cell) {
+            if(size == ring.length) {
+                // Unwrap the ring into a bigger one
+                long[] bigger = Arrays.copyOfRange(ring, head, head + ring.length * 2);
+                System.arraycopy(ring, 0, bigger, ring.length - head, head);
+                ring = bigger;
+                head = 0;
+            }
+            ring[(head + size++) & (ring.length - 1)] = cell;
+        }
+
+        /**
+         * Removes the spot at the front of the queue.
+         *
+         * @return the spot's index
+         */
+        public long remove() {
+            long cell = ring[head];
+            head = (head + 1) & (ring.length - 1);
+            size--;
+            return cell;
+        }
+
+        /**
+         * Returns true iff the queue is empty.
+         *
+         * @return true iff the queue is empty
+         */
+        public boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+public class LoadClient {
+    private static final int SIZE = 16;
+    private static final int MINES = 40;
+
+    /**
+     * The program's entry point.
+     * Plays many games at once against a
+     * GameServer and prints the latency
+     * percentiles of its requests.
+     * Optionally takes the number of games,
+     * connections, requests per connection,
+     * host and port as arguments. With no
+     * arguments it starts its own server and
+     * plays 10,000 games over 200 connections.
+     *
+     * @param args The command-line arguments
+     *
+     * @throws Exception if the games failed
+     */
+    public static void main(String[] args) throws Exception {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int numConnections = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        String host = args.length > 3 ? args[3] : "localhost";
+        int port;
+        GameServer server = null;
+        if(args.length > 4) {
+            port = Integer.parseInt(args[4]);
+        } else {
+            server = new GameServer(0, 60000, numConnections, games);
+            server.start();
+            port = server.getPort();
+        }
+
+        ExecutorService connections =
+            GameServer.newThreadPerTaskExecutor("LoadClient connection");
+        List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+        final CountDownLatch ready = new CountDownLatch(numConnections);
+        long start = System.nanoTime();
+        for(int c = 0; c < numConnections; c++) {
+            int connectionGames = games / numConnections
+                + (c < games % numConnections ? 1 : 0);
+            results.add(connections.submit(
+                new Player(host, port, connectionGames, requests, c, ready)));
+        }
+        long[] latencies = new long[0];
+        for(Future<long[]> result : results) {
+            long[] some = result.get();
+            int length = latencies.length;
+            latencies = Arrays.copyOf(latencies, length + some.length);
+            System.arraycopy(some, 0, latencies, length, some.length);
+        }
+        long elapsed = System.nanoTime() - start;
+        connections.shutdown();
+        if(server != null) {
+            System.out.println(server.getNumSessions() + " games open on the server.");
+            server.close();
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%d requests over %d games in %.2f s (%.0f/s)%n",
+                          latencies.length, games, elapsed / 1e9,
+                          latencies.length / (elapsed / 1e9));
+        double[] percentiles = {50, 90, 99, 99.9, 100};
+        for(double p : percentiles) {
+            System.out.printf("p%-5s %8.1f us%n",
+                              p == 100 ? "max" : "" + p,
+                              percentile(latencies, p) / 1e3);
+        }
+    }
+
+    /**
+     * Returns the given percentile
+     * of the sorted latencies.
+     *
+     * @param sorted The latencies, sorted
+     * @param p The percentile, 0 to 100
+     *
+     * @return the latency at that percentile
+     */
+    private static long percentile(long[] sorted, double p) {
+        if(sorted.length == 0) {
+            return 0;
+        }
+        int i = (int)Math.ceil(p / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    /**
+     * One connection's share of the games.
+     * It opens all of its games, waits for every
+     * other connection to do the same so that
+     * all of the games are in progress at once,
+     * then plays random moves in turn across
+     * them, starting a new game whenever one
+     * ends.
+     */
+    private static class Player implements Callable<long[]> {
+        private String host;
+        private int port;
+        private int numGames;
+        private int requests;
+        private Random random;
+        private CountDownLatch ready;
+        private BufferedReader in;
+        private Writer out;
+
+        /**
+         * Creates a Player.
+         *
+         * @param host The server's host
+         * @param port The server's port
+         * @param numGames The number of games
+         * @param requests The number of moves to time
+         * @param seed The seed of the moves
+         * @param ready Counted down once the
+         *              games are open
+         */
+        public Player(String host, int port, int numGames, int requests,
+                      long seed, CountDownLatch ready) {
+            this.host = host;
+            this.port = port;
+            this.numGames = numGames;
+            this.requests = requests;
+            this.random = new Random(seed);
+            this.ready = ready;
+        }
+
+        /**
+         * Plays the games.
+         *
+         * @return the latency of each move,
+         *         in nanoseconds
+         *
+         * @throws Exception if a request failed
+         */
+        public long[] call() throws Exception {
+            Socket socket = new Socket(host, port);
+            try {
+                socket.setTcpNoDelay(true);
+                in = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), "US-ASCII"));
+                out = new BufferedWriter(new OutputStreamWriter(
+                    socket.getOutputStream(), "US-ASCII"));
+                long[] ids = new long[numGames];
+                for(int g = 0; g < numGames; g++) {
+                    ids[g] = newGame();
+                }
+                ready.countDown();
+                ready.await();
+
+                long[] latencies = new long[numGames == 0 ? 0 : requests];
+                for(int r = 0; r < latencies.length; r++) {
+                    int g = r % numGames;
+                    String command = random.nextInt(8) == 0 ? "FLAG " : "REVEAL ";
+                    long start = System.nanoTime();
+                    String reply = request(command + ids[g] + " "
+                        + random.nextInt(SIZE) + " " + random.nextInt(SIZE));
+                    latencies[r] = System.nanoTime() - start;
+                    if(!reply.endsWith("PLAYING")) {
+                        request("END " + ids[g]);
+                        ids[g] = newGame();
+                    }
+                }
+                for(long id : ids) {
+                    request("END " + id);
+                }
+                return latencies;
+            } finally {
+                socket.close();
+            }
+        }
+
+        /**
+         * Starts a new game.
+         *
+         * @return the game's id
+         *
+         * @throws IOException if the request failed
+         */
+        private long newGame() throws IOException {
+            String reply = request("NEW " + SIZE + " " + MINES
+                                   + " " + random.nextLong());
+            return Long.parseLong(reply.substring("GAME ".length()));
+        }
+
+        /**
+         * Sends a request and waits for the reply.
+         *
+         * @param line The request
+         *
+         * @return the reply
+         *
+         * @throws IOException if the request failed,
+         *         or the server reported an error
+         */
+        private String request(String line) throws IOException {
+            out.write(line);
+            out.write('\n');
+            out.flush();
+            String reply = in.readLine();
+            if(reply == null) {
+                throw new EOFException("The server closed the connection.");
+            }
+            if(reply.startsWith("ERROR")) {
+                throw new IOException(line + ": " + reply);
+            }
+            return reply;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+import javax.management.*;
+public class Metrics implements MetricsMXBean {
+    public static final String OBJECT_NAME = "minesweeper:type=Metrics";
+
+    // Times are recorded in nanoseconds. A view
+    // update is BoardView.update, or a paint of
+    // the CanvasBoardView, which does its work
+    // as it paints.
+    public static final Histogram REVEAL_NANOS = new Histogram();
+    public static final Histogram FLOOD_SIZE = new Histogram();
+    public static final Histogram RESET_NANOS = new Histogram();
+    public static final Histogram VIEW_UPDATE_NANOS = new Histogram();
+    public static final Histogram REPAINTED_SPOTS = new Histogram();
+
+    private static final Logger LOGGER = Logger.getLogger("minesweeper.metrics");
+    private static Metrics instance;
+    private static ScheduledExecutorService logger;
+
+    private Metrics() {}
+
+    /**
+     * Registers the metrics with the platform
+     * MBean server, so that JConsole or any
+     * other JMX client can watch them.
+     * Registering more than once does nothing.
+     *
+     * @return the registered MBean
+     */
+    public static synchronized Metrics register() {
+        if(instance == null) {
+            instance = new Metrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(instance, new ObjectName(OBJECT_NAME));
+            } catch(JMException e) {
+                LOGGER.warning("Failed to register metrics: " + e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Logs a summary of the metrics at INFO
+     * level every given number of seconds,
+     * from a daemon thread. Only the first
+     * call starts the logging.
+     *
+     * @param seconds The time between lines
+     */
+    public static synchronized void startLogging(long seconds) {
+        if(logger != null) {
+            return;
+        }
+        logger = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Metrics logger");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        logger.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                LOGGER.info(summary());
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns a one-line summary of the metrics.
+     *
+     * @return the summary
+     */
+    public static String summary() {
+        return String.format(
+            "reveals=%d p50=%.0fus p99=%.0fus max=%.0fus"
+            + " flood mean=%.1f max=%d"
+            + " resets=%d mean=%.0fus"
+            + " view updates=%d mean=%.0fus p99=%.0fus"
+            + " repainted mean=%.1f max=%d",
+            REVEAL_NANOS.getCount(),
+            micros(REVEAL_NANOS.getPercentile(50)),
+            micros(REVEAL_NANOS.getPercentile(99)),
+            micros(REVEAL_NANOS.getMax()),
+            FLOOD_SIZE.getMean(), FLOOD_SIZE.getMax(),
+            RESET_NANOS.getCount(), RESET_NANOS.getMean() / 1e3,
+            VIEW_UPDATE_NANOS.getCount(),
+            VIEW_UPDATE_NANOS.getMean() / 1e3,
+            micros(VIEW_UPDATE_NANOS.getPercentile(99)),
+            REPAINTED_SPOTS.getMean(), REPAINTED_SPOTS.getMax());
+    }
+
+    // MetricsMXBean
+
+    /**
+     * Returns the number of reveals
+     * made on any engine.
+     *
+     * @return the number of reveals
+     */
+    public long getRevealCount() {
+        return REVEAL_NANOS.getCount();
+    }
+
+    /**
+     * Returns the median reveal time.
+     *
+     * @return the median reveal time
+     *         in microseconds
+     */
+    public double getRevealMedianMicros() {
+        return micros(REVEAL_NANOS.getPercentile(50));
+    }
+
+    /**
+     * Returns the 99th percentile reveal time.
+     *
+     * @return the 99th percentile reveal
+     *         time in microseconds
+     */
+    public double getReveal99thPercentileMicros() {
+        return micros(REVEAL_NANOS.getPercentile(99));
+    }
+
+    /**
+     * Returns the longest reveal time.
+     *
+     * @return the longest reveal time
+     *         in microseconds
+     */
+    public double getRevealMaxMicros() {
+        return micros(REVEAL_NANOS.getMax());
+    }
+
+    /**
+     * Returns the mean number of
+     * spots opened per reveal.
+     *
+     * @return the mean flood size
+     */
+    public double getFloodSizeMean() {
+        return FLOOD_SIZE.getMean();
+    }
+
+    /**
+     * Returns the most spots
+     * opened by one reveal.
+     *
+     * @return the largest flood size
+     */
+    public long getFloodSizeMax() {
+        return FLOOD_SIZE.getMax();
+    }
+
+    /**
+     * Returns the number of boards generated.
+     *
+     * @return the number of boards generated
+     */
+    public long getResetCount() {
+        return RESET_NANOS.getCount();
+    }
+
+    /**
+     * Returns the mean time to generate a board.
+     *
+     * @return the mean board generation
+     *         time in microseconds
+     */
+    public double getResetMeanMicros() {
+        return RESET_NANOS.getMean() / 1e3;
+    }
+
+    /**
+     * Returns the number of view updates.
+     *
+     * @return the number of view updates
+     */
+    public long getViewUpdateCount() {
+        return VIEW_UPDATE_NANOS.getCount();
+    }
+
+    /**
+     * Returns the mean view update time.
+     *
+     * @return the mean view update time
+     *         in microseconds
+     */
+    public double getViewUpdateMeanMicros() {
+        return VIEW_UPDATE_NANOS.getMean() / 1e3;
+    }
+
+    /**
+     * Returns the 99th percentile
+     * view update time.
+     *
+     * @return the 99th percentile view update
+     *         time in microseconds
+     */
+    public double getViewUpdate99thPercentileMicros() {
+        return micros(VIEW_UPDATE_NANOS.getPercentile(99));
+    }
+
+    /**
+     * Returns the mean number of spots
+     * repainted per view update.
+     *
+     * @return the mean spots repainted
+     */
+    public double getRepaintedSpotsMean() {
+        return REPAINTED_SPOTS.getMean();
+    }
+
+    /**
+     * Returns the most spots repainted
+     * by one view update.
+     *
+     * @return the most spots repainted
+     */
+    public long getRepaintedSpotsMax() {
+        return REPAINTED_SPOTS.getMax();
+    }
+
+    /**
+     * Forgets every value recorded so far.
+     */
+    public void reset() {
+        REVEAL_NANOS.reset();
+        FLOOD_SIZE.reset();
+        RESET_NANOS.reset();
+        VIEW_UPDATE_NANOS.reset();
+        REPAINTED_SPOTS.reset();
+    }
+
+    /**
+     * Converts nanoseconds to microseconds.
+     *
+     * @param nanos The time in nanoseconds
+     *
+     * @return the time in microseconds
+     */
+    private static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+}
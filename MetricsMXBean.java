@@ -0,0 +1,105 @@
+public interface MetricsMXBean {
+    // The metrics Metrics publishes over
+    // JMX, with times in microseconds
+
+    /**
+     * Returns the number of reveals.
+     *
+     * @return the number of reveals
+     */
+    long getRevealCount();
+
+    /**
+     * Returns the median reveal time.
+     *
+     * @return the median reveal time
+     */
+    double getRevealMedianMicros();
+
+    /**
+     * Returns the 99th percentile reveal time.
+     *
+     * @return the 99th percentile reveal time
+     */
+    double getReveal99thPercentileMicros();
+
+    /**
+     * Returns the longest reveal time.
+     *
+     * @return the longest reveal time
+     */
+    double getRevealMaxMicros();
+
+    /**
+     * Returns the mean number of
+     * spots opened per reveal.
+     *
+     * @return the mean flood size
+     */
+    double getFloodSizeMean();
+
+    /**
+     * Returns the most spots
+     * opened by one reveal.
+     *
+     * @return the largest flood size
+     */
+    long getFloodSizeMax();
+
+    /**
+     * Returns the number of boards generated.
+     *
+     * @return the number of boards generated
+     */
+    long getResetCount();
+
+    /**
+     * Returns the mean time to generate a board.
+     *
+     * @return the mean board generation time
+     */
+    double getResetMeanMicros();
+
+    /**
+     * Returns the number of view updates.
+     *
+     * @return the number of view updates
+     */
+    long getViewUpdateCount();
+
+    /**
+     * Returns the mean view update time.
+     *
+     * @return the mean view update time
+     */
+    double getViewUpdateMeanMicros();
+
+    /**
+     * Returns the 99th percentile
+     * view update time.
+     *
+     * @return the 99th percentile view update time
+     */
+    double getViewUpdate99thPercentileMicros();
+
+    /**
+     * Returns the mean number of spots
+     * repainted per view update.
+     *
+     * @return the mean spots repainted
+     */
+    double getRepaintedSpotsMean();
+
+    /**
+     * Returns the most spots repainted
+     * by one view update.
+     *
+     * @return the most spots repainted
+     */
+    long getRepaintedSpotsMax();
+
+    /**
+     * Forgets every value recorded so far.
+     */
+    void reset();
+}
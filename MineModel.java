@@ -1,6 +1,16 @@
-import java.util.Observable;
-public class MineModel extends Observable {
-    private Minesweeper minesweeper;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.concurrent.*;
+public class MineModel {
+    // Changes are serialized on this model,
+    // so they may come from any thread
+    private volatile Minesweeper minesweeper;
+    private ProbabilityEngine probabilities;
+    private Journal journal;
+    private CopyOnWriteArrayList<Registration> listeners;
+    // The state last given to the listeners
+    private GameState reportedState;
 
     /**
      * Creates a MineModel backed by
@@ -10,6 +20,54 @@ public class MineModel extends Observable {
      */
     public MineModel(Minesweeper minesweeper) {
         this.minesweeper = minesweeper;
+        this.probabilities = new ProbabilityEngine();
+        this.journal = new Journal();
+        this.listeners = new CopyOnWriteArrayList<Registration>();
+        this.reportedState = minesweeper.getState();
+        recordStart();
+    }
+
+    /**
+     * Adds a listener that is told of each
+     * change on the thread that made it,
+     * before the change returns.
+     *
+     * @param listener The listener
+     */
+    public void addListener(MineModelListener listener) {
+        addListener(listener, null);
+    }
+
+    /**
+     * Adds a listener that is told of each
+     * change by a task run on the given
+     * executor, so that a slow listener never
+     * holds up play. The changes are only
+     * delivered in order if the executor runs
+     * its tasks in order, as a single thread
+     * executor does.
+     *
+     * @param listener The listener
+     * @param executor The executor to deliver
+     *                 changes on, or null to
+     *                 deliver them synchronously
+     */
+    public void addListener(MineModelListener listener, Executor executor) {
+        listeners.add(new Registration(listener, executor));
+    }
+
+    /**
+     * Removes a listener, however
+     * it was added.
+     *
+     * @param listener The listener
+     */
+    public void removeListener(MineModelListener listener) {
+        for(Registration registration : listeners) {
+            if(registration.listener == listener) {
+                listeners.remove(registration);
+            }
+        }
     }
 
     /**
@@ -30,6 +88,15 @@ public class MineModel extends Observable {
         return minesweeper.getNumMines();
     }
 
+    /**
+     * Returns the seed of the current board.
+     *
+     * @return the seed of the current board
+     */
+    public long getSeed() {
+        return minesweeper.getSeed();
+    }
+
     /**
      * Returns true iff the spot
      * at x,y is revealed.
@@ -86,6 +153,71 @@ public class MineModel extends Observable {
         return minesweeper.getNumAdjacentMines(x, y);
     }
 
+    /**
+     * Writes the visible state of every spot
+     * into the given array, indexed by x + y*size.
+     * Like the moves, this holds the model's
+     * lock, so a move on another thread is
+     * never seen half made.
+     *
+     * @param dest The array, at least size*size long
+     *
+     * @see Minesweeper#exportState(int, int, int, int, byte[], int)
+     */
+    public synchronized void exportState(byte[] dest) {
+        minesweeper.exportState(dest);
+    }
+
+    /**
+     * Writes the visible state of each spot in
+     * the given rectangle into the given array,
+     * a row at a time.
+     *
+     * @param x The x co-ord of the top left spot
+     * @param y The y co-ord of the top left spot
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     * @param dest The array to write into
+     * @param offset Where in the array to start
+     *
+     * @see Minesweeper#exportState(int, int, int, int, byte[], int)
+     */
+    public synchronized void exportState(int x, int y, int width, int height,
+                                         byte[] dest, int offset) {
+        minesweeper.exportState(x, y, width, height, dest, offset);
+    }
+
+    /**
+     * Writes the visible state of every spot
+     * into the given buffer, indexed by
+     * x + y*size from its position.
+     *
+     * @param dest The buffer
+     *
+     * @see Minesweeper#exportState(int, int, int, int, ByteBuffer)
+     */
+    public synchronized void exportState(ByteBuffer dest) {
+        minesweeper.exportState(dest);
+    }
+
+    /**
+     * Writes the visible state of each spot in
+     * the given rectangle into the given buffer,
+     * a row at a time from its position.
+     *
+     * @param x The x co-ord of the top left spot
+     * @param y The y co-ord of the top left spot
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     * @param dest The buffer
+     *
+     * @see Minesweeper#exportState(int, int, int, int, ByteBuffer)
+     */
+    public synchronized void exportState(int x, int y, int width, int height,
+                                         ByteBuffer dest) {
+        minesweeper.exportState(x, y, width, height, dest);
+    }
+
     /**
      * Returns true iff there exists
      * at least one revealed mine.
@@ -97,37 +229,226 @@ public class MineModel extends Observable {
         return minesweeper.hasRevealedMine();
     }
 
+    /**
+     * Returns the state of the game.
+     *
+     * @return the state of the game
+     */
+    public GameState getState() {
+        return minesweeper.getState();
+    }
+
+    /**
+     * Returns the number of flagged spots.
+     *
+     * @return the number of flagged spots
+     */
+    public int getNumFlags() {
+        return minesweeper.getNumFlags();
+    }
+
+    /**
+     * Returns the exact probability that each
+     * spot is a mine, given the revealed numbers
+     * and the number of mines. Only the parts
+     * of the board changed since the last call
+     * are recalculated.
+     *
+     * @return the probability that each spot
+     *         is a mine, indexed by x + y*size
+     *
+     * @see ProbabilityEngine#compute
+     */
+    public double[] getMineProbabilities() {
+        return probabilities.compute(this);
+    }
+
+    /**
+     * Returns the exact probability that each
+     * spot is a mine in a copy of the game's
+     * visible state, taken with exportState.
+     * This may be called on any thread, so the
+     * work can be done while the game goes on.
+     *
+     * @param state The visible state of each
+     *              spot, indexed by x + y*size
+     * @param size The size of the board it was taken from
+     * @param numMines The number of mines in that board
+     *
+     * @return the probability that each spot
+     *         is a mine, indexed by x + y*size
+     *
+     * @see ProbabilityEngine#compute(byte[], int, int)
+     */
+    public double[] getMineProbabilities(byte[] state, int size, int numMines) {
+        return probabilities.compute(state, size, numMines);
+    }
+
     /**
      * Generates a new random board.
      */
-    public void reset() {
+    public synchronized void reset() {
         minesweeper.reset();
-        setChanged();
-        notifyObservers();
+        journal.recordReset(minesweeper);
+        fireBoardReset();
+    }
+
+    /**
+     * Starts the given board from the pool,
+     * with its starting spot revealed.
+     *
+     * @param board The board to start
+     */
+    public synchronized void reset(BoardPool.Board board) {
+        minesweeper.setNumMines(board.getNumMines());
+        minesweeper.reset(board.getSeed());
+        journal.recordReset(minesweeper);
+        minesweeper.reveal(board.getStartX(), board.getStartY());
+        journal.recordReveal(board.getStartX() + board.getStartY()*getSize());
+        fireBoardReset();
+    }
+
+    /**
+     * Writes the whole game to the given file.
+     *
+     * @param file The file to write to
+     *
+     * @throws IOException if writing failed
+     *
+     * @see Minesweeper#save
+     */
+    public synchronized void save(File file) throws IOException {
+        minesweeper.save(file);
+    }
+
+    /**
+     * Replaces the game with one read from
+     * the given file, which may be a
+     * different size.
+     *
+     * @param file The file to read from
+     *
+     * @throws IOException if reading failed, or
+     *         the file isn't a valid save file
+     *
+     * @see Minesweeper#load
+     */
+    public synchronized void load(File file) throws IOException {
+        start(Minesweeper.load(file));
+    }
+
+    /**
+     * Replaces the game with the given one,
+     * which may be a different size.
+     *
+     * @param minesweeper The new game
+     */
+    public synchronized void start(Minesweeper minesweeper) {
+        minesweeper.setFloodPool(this.minesweeper.getFloodPool());
+        this.minesweeper = minesweeper;
+        recordStart();
+        fireBoardReset();
+    }
+
+    /**
+     * Returns the journal of every change
+     * made through this model, which Replay
+     * can play back.
+     *
+     * @return the journal
+     */
+    public Journal getJournal() {
+        return journal;
     }
 
     /**
      * Reveals x,y. If x,y has 0 adjacent
-     * mines, floods outwards, recursively
-     * revealing until the edges are reached.
+     * mines, floods outwards, revealing
+     * until the edges are reached.
      * If x,y is a mine, reveals all mines.
      *
      * @param x The x co-ord
      * @param y The y co-ord
      */
-    public void reveal(int x, int y) {
-        minesweeper.reveal(x, y);
-        setChanged();
-        notifyObservers();
+    public synchronized void reveal(int x, int y) {
+        CellList opened = minesweeper.reveal(x, y);
+        journal.recordReveal(x + y*getSize());
+        fireCellsRevealed(opened);
+    }
+
+    /**
+     * Chords x,y: if it is a revealed number
+     * with that many flags around it, reveals
+     * its unflagged neighbours.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @see Minesweeper#chord
+     */
+    public synchronized void chord(int x, int y) {
+        CellList opened = minesweeper.chord(x, y);
+        journal.recordChord(x + y*getSize());
+        fireCellsRevealed(opened);
+    }
+
+    /**
+     * Makes every move in the batch, in order,
+     * as one change: listeners are told once
+     * about every spot whose flag was toggled,
+     * each named once however many times it
+     * was toggled, then once about every spot
+     * revealed. Each move is
+     * still journaled, and undone, on its own.
+     * If a move throws, the moves before it
+     * stay made, and listeners are told about
+     * them.
+     *
+     * @param batch The moves to make
+     */
+    public synchronized void apply(Batch batch) {
+        int size = getSize();
+        CellList opened = new CellList();
+        CellList flagged = new CellList();
+        // The spots already in flagged
+        BitSet toggled = new BitSet();
+        try {
+            for(int i = 0; i < batch.opcodes.size(); i++) {
+                int x = batch.xs.get(i);
+                int y = batch.ys.get(i);
+                switch(batch.opcodes.get(i)) {
+                case Journal.REVEAL:
+                    opened.addAll(minesweeper.reveal(x, y));
+                    journal.recordReveal(x + y*size);
+                    break;
+                case Journal.CHORD:
+                    opened.addAll(minesweeper.chord(x, y));
+                    journal.recordChord(x + y*size);
+                    break;
+                default:
+                    minesweeper.toggleFlag(x, y);
+                    journal.recordFlag(x + y*size);
+                    if(!toggled.get(x + y*size)) {
+                        toggled.set(x + y*size);
+                        flagged.add(x + y*size);
+                    }
+                }
+            }
+        } finally {
+            // Flags first, so the game over
+            // a reveal may cause comes last
+            fireFlagChanged(flagged);
+            fireCellsRevealed(opened);
+        }
     }
 
     /**
      * Reveals all mines.
      */
-    public void revealMines() {
-        minesweeper.revealMines();
-        setChanged();
-        notifyObservers();
+    public synchronized void revealMines() {
+        CellList opened = minesweeper.revealMines();
+        journal.recordRevealMines();
+        fireCellsRevealed(opened);
     }
 
     /**
@@ -136,10 +457,75 @@ public class MineModel extends Observable {
      * @param x The x co-ord
      * @param y The y co-ord
      */
-    public void toggleFlag(int x, int y) {
+    public synchronized void toggleFlag(int x, int y) {
         minesweeper.toggleFlag(x, y);
-        setChanged();
-        notifyObservers();
+        journal.recordFlag(x + y*getSize());
+        CellList cells = new CellList(1);
+        cells.add(x + y*getSize());
+        fireFlagChanged(cells);
+    }
+
+    /**
+     * Undoes the most recent move on the
+     * current board, if there is one.
+     */
+    public synchronized void undo() {
+        History.Move move = minesweeper.undo();
+        if(move == null) {
+            return;
+        }
+        journal.recordUndo();
+        if(move.isFlag()) {
+            fireFlagChanged(move.getCells());
+        } else {
+            fireCellsHidden(move.getCells());
+        }
+    }
+
+    /**
+     * Redoes the most recently undone move,
+     * if no move has been made since.
+     */
+    public synchronized void redo() {
+        History.Move move = minesweeper.redo();
+        if(move == null) {
+            return;
+        }
+        journal.recordRedo();
+        if(move.isFlag()) {
+            fireFlagChanged(move.getCells());
+        } else {
+            fireCellsRevealed(move.getCells());
+        }
+    }
+
+    /**
+     * Returns true iff there is a move to undo.
+     *
+     * @return true iff there is a move to undo
+     */
+    public boolean canUndo() {
+        return minesweeper.canUndo();
+    }
+
+    /**
+     * Returns true iff there is a move to redo.
+     *
+     * @return true iff there is a move to redo
+     */
+    public boolean canRedo() {
+        return minesweeper.canRedo();
+    }
+
+    /**
+     * Sets how the first spot revealed on
+     * each board is protected from mines.
+     *
+     * @param firstClick The protection
+     */
+    public synchronized void setFirstClick(Minesweeper.FirstClick firstClick) {
+        minesweeper.setFirstClick(firstClick);
+        journal.recordFirstClick(firstClick);
     }
 
     /**
@@ -147,9 +533,248 @@ public class MineModel extends Observable {
      *
      * @param numMines The number of mines
      */
-    public void setNumMines(int numMines) {
+    public synchronized void setNumMines(int numMines) {
         minesweeper.setNumMines(numMines);
-        setChanged();
-        notifyObservers();
+        fire(new Event() {
+            public void deliver(MineModelListener listener) {
+                listener.numMinesChanged(MineModel.this);
+            }
+        });
+    }
+
+    /**
+     * Records the current game in the journal:
+     * just its seed if nothing has happened in
+     * it yet, otherwise its whole state.
+     */
+    private void recordStart() {
+        if(minesweeper.getNumRevealed() == 0
+        && minesweeper.getNumFlags() == 0
+        && !minesweeper.hasRevealedMine()) {
+            journal.recordReset(minesweeper);
+        } else {
+            journal.recordLoad(minesweeper);
+        }
+    }
+
+    /**
+     * Tells the listeners a new board was
+     * started, and that its game is over
+     * if it was loaded finished.
+     */
+    private void fireBoardReset() {
+        fire(new Event() {
+            public void deliver(MineModelListener listener) {
+                listener.boardReset(MineModel.this);
+            }
+        });
+        reportedState = GameState.PLAYING;
+        fireGameOver();
+    }
+
+    /**
+     * Tells the listeners spots were revealed.
+     *
+     * @param cells The spots
+     */
+    private void fireCellsRevealed(final CellList cells) {
+        fireCells(cells, new Event() {
+            public void deliver(MineModelListener listener) {
+                listener.cellsRevealed(MineModel.this, cells);
+            }
+        });
+    }
+
+    /**
+     * Tells the listeners spots were hidden.
+     *
+     * @param cells The spots
+     */
+    private void fireCellsHidden(final CellList cells) {
+        fireCells(cells, new Event() {
+            public void deliver(MineModelListener listener) {
+                listener.cellsHidden(MineModel.this, cells);
+            }
+        });
+    }
+
+    /**
+     * Tells the listeners flags were toggled.
+     *
+     * @param cells The spots
+     */
+    private void fireFlagChanged(final CellList cells) {
+        fireCells(cells, new Event() {
+            public void deliver(MineModelListener listener) {
+                listener.flagChanged(MineModel.this, cells);
+            }
+        });
+    }
+
+    /**
+     * Delivers a change to spots, unless
+     * no spots changed, then tells the
+     * listeners if it ended the game.
+     *
+     * @param cells The spots that changed
+     * @param event The change
+     */
+    private void fireCells(CellList cells, Event event) {
+        if(cells.isEmpty()) {
+            return;
+        }
+        fire(event);
+        fireGameOver();
+    }
+
+    /**
+     * Tells the listeners the game is over
+     * if it has just ended. An undo that
+     * reopens the game is noted, so ending
+     * it again is reported again.
+     */
+    private void fireGameOver() {
+        final GameState state = minesweeper.getState();
+        if(state == reportedState) {
+            return;
+        }
+        reportedState = state;
+        if(state != GameState.PLAYING) {
+            fire(new Event() {
+                public void deliver(MineModelListener listener) {
+                    listener.gameOver(MineModel.this, state);
+                }
+            });
+        }
+    }
+
+    /**
+     * Delivers a change to every listener,
+     * directly or on its executor.
+     *
+     * @param event The change
+     */
+    private void fire(final Event event) {
+        for(Registration registration : listeners) {
+            final MineModelListener listener = registration.listener;
+            if(registration.executor == null) {
+                event.deliver(listener);
+            } else {
+                registration.executor.execute(new Runnable() {
+                    public void run() {
+                        event.deliver(listener);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * A change to deliver to listeners.
+     */
+    private abstract static class Event {
+        /**
+         * Calls the listener's method
+         * for this change.
+         *
+         * @param listener The listener
+         */
+        public abstract void deliver(MineModelListener listener);
+    }
+
+    /**
+     * A listener and how its
+     * changes are delivered.
+     */
+    private static class Registration {
+        private MineModelListener listener;
+        // Null for synchronous delivery
+        private Executor executor;
+
+        /**
+         * Creates a Registration.
+         *
+         * @param listener The listener
+         * @param executor The executor, or null
+         */
+        public Registration(MineModelListener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * Moves to be made together by
+     * MineModel.apply, so that bots and
+     * replays making many moves at once
+     * update the views only once.
+     */
+    public static class Batch {
+        // The moves, as Journal opcodes,
+        // and the spots they are made on
+        private CellList opcodes;
+        private CellList xs;
+        private CellList ys;
+
+        /**
+         * Creates an empty Batch.
+         */
+        public Batch() {
+            opcodes = new CellList();
+            xs = new CellList();
+            ys = new CellList();
+        }
+
+        /**
+         * Adds a reveal of x,y.
+         *
+         * @param x The x co-ord
+         * @param y The y co-ord
+         */
+        public void reveal(int x, int y) {
+            add(Journal.REVEAL, x, y);
+        }
+
+        /**
+         * Adds a flag toggle on x,y.
+         *
+         * @param x The x co-ord
+         * @param y The y co-ord
+         */
+        public void toggleFlag(int x, int y) {
+            add(Journal.FLAG, x, y);
+        }
+
+        /**
+         * Adds a chord on x,y.
+         *
+         * @param x The x co-ord
+         * @param y The y co-ord
+         */
+        public void chord(int x, int y) {
+            add(Journal.CHORD, x, y);
+        }
+
+        /**
+         * Returns the number of moves.
+         *
+         * @return the number of moves
+         */
+        public int size() {
+            return opcodes.size();
+        }
+
+        /**
+         * Adds a move.
+         *
+         * @param opcode The move's Journal opcode
+         * @param x The x co-ord
+         * @param y The y co-ord
+         */
+        private void add(int opcode, int x, int y) {
+            opcodes.add(opcode);
+            xs.add(x);
+            ys.add(y);
+        }
     }
 }
@@ -0,0 +1,50 @@
+public class MineModelAdapter implements MineModelListener {
+    // Ignores every change, so that listeners
+    // need only override the ones they want
+
+    /**
+     * Called when a new board was started.
+     *
+     * @param model The model
+     */
+    public void boardReset(MineModel model) {}
+
+    /**
+     * Called when the number of mines was changed.
+     *
+     * @param model The model
+     */
+    public void numMinesChanged(MineModel model) {}
+
+    /**
+     * Called when spots were revealed.
+     *
+     * @param model The model
+     * @param cells The spots that changed
+     */
+    public void cellsRevealed(MineModel model, CellList cells) {}
+
+    /**
+     * Called when revealed spots were hidden.
+     *
+     * @param model The model
+     * @param cells The spots hidden
+     */
+    public void cellsHidden(MineModel model, CellList cells) {}
+
+    /**
+     * Called when flags were toggled.
+     *
+     * @param model The model
+     * @param cells The spots toggled
+     */
+    public void flagChanged(MineModel model, CellList cells) {}
+
+    /**
+     * Called when the game was won or lost.
+     *
+     * @param model The model
+     * @param state GameState.WON or GameState.LOST
+     */
+    public void gameOver(MineModel model, GameState state) {}
+}
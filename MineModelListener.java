@@ -0,0 +1,63 @@
+public interface MineModelListener {
+    // Receives the changes a MineModel makes.
+    // Spots are given as board indices (x + y*size),
+    // and the lists must not be changed.
+
+    /**
+     * Called when a new board was started,
+     * so every spot may have changed.
+     *
+     * @param model The model
+     */
+    void boardReset(MineModel model);
+
+    /**
+     * Called when the number of mines was
+     * changed. No spots change until
+     * the next reset.
+     *
+     * @param model The model
+     */
+    void numMinesChanged(MineModel model);
+
+    /**
+     * Called when spots were revealed, by a
+     * reveal, a chord, a redo or revealing
+     * all mines. A batch sends at most one
+     * flagChanged, naming each spot toggled
+     * once, then at most one cellsRevealed
+     * naming every spot it revealed.
+     *
+     * @param model The model
+     * @param cells The spots that changed
+     */
+    void cellsRevealed(MineModel model, CellList cells);
+
+    /**
+     * Called when revealed spots were
+     * hidden again by an undo.
+     *
+     * @param model The model
+     * @param cells The spots hidden
+     */
+    void cellsHidden(MineModel model, CellList cells);
+
+    /**
+     * Called when flags were toggled. A spot
+     * toggled back within one batch is still
+     * named, once, so it may be unchanged.
+     *
+     * @param model The model
+     * @param cells The spots toggled
+     */
+    void flagChanged(MineModel model, CellList cells);
+
+    /**
+     * Called when the game was won or lost,
+     * after the change that ended it.
+     *
+     * @param model The model
+     * @param state GameState.WON or GameState.LOST
+     */
+    void gameOver(MineModel model, GameState state);
+}
@@ -1,8 +1,64 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.*;
 public class Minesweeper {
+    // Save file layout: a fixed header, then the
+    // mine, revealed and flag planes as
+    // little-endian longs
+    private static final int FILE_MAGIC = 0x4D535750; // "MSWP"
+    private static final int FILE_VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 32;
+    // A flood whose frontier reaches this many
+    // spots is expanded in parallel, one level at
+    // a time, and each parallel task expands at
+    // least FLOOD_LEAF spots of the frontier
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int FLOOD_LEAF = 1024;
+    // Atomic access to plane words
+    // during a parallel flood
+    private static final VarHandle WORDS =
+        MethodHandles.arrayElementVarHandle(long[].class);
+    // The visible state of a spot, as written by
+    // exportState: 0 to 8 for a revealed number,
+    // or one of these, which match TileAtlas's tiles
+    public static final byte
+        HIDDEN = 9,
+        FLAGGED = 10,
+        REVEALED_MINE = 11;
+
     private int size;
     private int numMines;
-    private MineSpot[] board;
+    // One bit per spot, 64 spots per word,
+    // indexed by x + y*size
+    private long[] mines;
+    private long[] revealed;
+    private long[] flags;
+    // Adjacent mine counts, four bits
+    // per spot, 16 spots per word
+    private long[] counts;
+    // Running totals, kept up to date by every
+    // change so the game state is O(1) to query
+    private int numSafe;
+    private int revealedSafe;
+    private int revealedMines;
+    private int numFlags;
+    // The seed of the current board, and the
+    // source of the seeds for the boards after it
+    private long seed;
+    private CopyableRandom seeds;
+    // The generator that placed the mines,
+    // kept to move them on the first reveal
+    private CopyableRandom rgen;
+    private FirstClick firstClick = FirstClick.SAFE_SPOT;
+    private boolean started;
+    // The moves made on the current board
+    private History history;
+    // The pool for parallel floods, or null
+    private ForkJoinPool floodPool;
 
     /**
      * Generates a random minesweeper board
@@ -12,43 +68,273 @@ public class Minesweeper {
      * @param numMines The number of mines in the board
      */
     public Minesweeper(int size, int numMines) {
-        if(numMines > size * size) {
-            throw new IllegalArgumentException(
-                "You cannot have more mines than there are " +
-                "spaces on the board to hold them.");
-        }
+        this(size, numMines, new Random().nextLong());
+    }
+
+    /**
+     * Generates the minesweeper board of the given
+     * size with the given number of mines that
+     * the given seed produces. The same arguments
+     * always produce the same board, and the same
+     * sequence of boards on each reset.
+     *
+     * @param size The size (edge length) of the board
+     * @param numMines The number of mines in the board
+     * @param seed The seed of the board
+     */
+    public Minesweeper(int size, int numMines, long seed) {
+        this(size, numMines, new CopyableRandom(seed));
+        reset(seed);
+    }
+
+    /**
+     * Creates a Minesweeper with no board yet.
+     *
+     * @param size The size (edge length) of the board
+     * @param numMines The number of mines in the board
+     * @param seeds The source of the boards' seeds
+     */
+    private Minesweeper(int size, int numMines, CopyableRandom seeds) {
+        checkNumMines(size, numMines);
         this.size = size;
         this.numMines = numMines;
-        reset();
+        this.seeds = seeds;
+        this.history = new History();
     }
 
     /**
      * Generates a new random board.
      */
     public void reset() {
+        reset(seeds.nextLong());
+    }
+
+    /**
+     * Generates the board that the given
+     * seed produces for the current size
+     * and number of mines.
+     *
+     * @param seed The seed of the board
+     */
+    public void reset(long seed) {
+        long startTime = System.nanoTime();
+        this.seed = seed;
         int numSpots = size * size;
-        Random rgen = new Random();
-        // Create an empty board
-        board = new MineSpot[numSpots];
-        for(int i = 0; i < board.length; i++) {
-            board[i] = new MineSpot();
-        }
+        rgen = new CopyableRandom(seed);
+        started = false;
+        clear();
         // Place the mines
-        for(int i = 0; i < numMines; i++) {
-            // Generate a random spot for the mine
-            int index = rgen.nextInt(numSpots);
-            // If there is a mine at the chosen
-            // spot, skip forwards to the first
-            // free location and put it there
-            while(board[index].isMine()) {
-                index++;
-                index %= numSpots;
-            }
-            // Place the mine
-            board[index].setMine(true);
+        if(numMines <= numSpots - numMines) {
+            placeMinesSparse(numSpots);
+        } else {
+            placeMinesDense(numSpots);
+        }
+        countAdjacentMines();
+        numSafe = numSpots - numMines;
+        revealedSafe = 0;
+        revealedMines = 0;
+        numFlags = 0;
+        Metrics.RESET_NANOS.record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Writes the whole game to the given file
+     * in a compact binary format: the size,
+     * number of mines, seed and first click
+     * settings, then the mine, revealed and
+     * flag planes at one bit per spot. The file
+     * is written through a memory mapping, so
+     * the planes are copied in bulk.
+     *
+     * @param file The file to write to
+     *
+     * @throws IOException if writing failed
+     */
+    public void save(File file) throws IOException {
+        long length = getSaveLength();
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            out.setLength(length);
+            MappedByteBuffer buffer = out.getChannel()
+                .map(FileChannel.MapMode.READ_WRITE, 0, length);
+            save(buffer);
+            buffer.force();
+        } finally {
+            out.close();
         }
     }
 
+    /**
+     * Writes the whole game to the given buffer
+     * in the format used by save(File), from
+     * the buffer's position onwards.
+     *
+     * @param buffer The buffer to write to, with
+     *               at least getSaveLength()
+     *               bytes remaining
+     */
+    public void save(ByteBuffer buffer) {
+        buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(FILE_MAGIC);
+        buffer.putInt(FILE_VERSION);
+        buffer.putInt(size);
+        buffer.putInt(numMines);
+        buffer.putLong(seed);
+        buffer.put((byte)firstClick.ordinal());
+        buffer.put((byte)(started ? 1 : 0));
+        buffer.position(FILE_HEADER_SIZE);
+        LongBuffer planes = buffer.asLongBuffer();
+        planes.put(mines);
+        planes.put(revealed);
+        planes.put(flags);
+    }
+
+    /**
+     * Returns the number of bytes
+     * the saved game takes up.
+     *
+     * @return the length of the saved game
+     */
+    public long getSaveLength() {
+        return FILE_HEADER_SIZE + 3L * 8 * mines.length;
+    }
+
+    /**
+     * Reads a game written by save. The file
+     * is read through a memory mapping and the
+     * planes are copied in bulk, then the counts
+     * and totals are rebuilt from them.
+     *
+     * @param file The file to read from
+     *
+     * @return the saved game
+     *
+     * @throws IOException if reading failed, or
+     *         the file isn't a valid save file
+     */
+    public static Minesweeper load(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            MappedByteBuffer buffer = in.getChannel()
+                .map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            return load(buffer);
+        } catch(IOException e) {
+            throw new IOException(
+                "Failed to load \"" + file + "\": " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads a game written by save from the
+     * buffer's remaining bytes.
+     *
+     * @param buffer The buffer to read from
+     *
+     * @return the saved game
+     *
+     * @throws IOException if the buffer doesn't
+     *         hold a valid saved game
+     */
+    public static Minesweeper load(ByteBuffer buffer) throws IOException {
+        buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        long length = buffer.remaining();
+        if(length < FILE_HEADER_SIZE || buffer.getInt() != FILE_MAGIC) {
+            throw new IOException("Not a saved game.");
+        }
+        int version = buffer.getInt();
+        if(version != FILE_VERSION) {
+            throw new IOException(
+                "Unsupported save file version " + version + ".");
+        }
+        int size = buffer.getInt();
+        int numMines = buffer.getInt();
+        long seed = buffer.getLong();
+        int firstClick = buffer.get();
+        boolean started = buffer.get() != 0;
+        // Check everything the constructor would,
+        // so a bad header is an IOException
+        if(size <= 0 || (long)size * size > Integer.MAX_VALUE
+        || numMines < 0 || (long)numMines > (long)size * size
+        || firstClick < 0 || firstClick >= FirstClick.values().length) {
+            throw new IOException("Corrupt saved game.");
+        }
+        long numWords = ((long)size * size + 63) >>> 6;
+        if(length != FILE_HEADER_SIZE + 3 * 8 * numWords) {
+            throw new IOException("Saved game is the wrong length.");
+        }
+
+        Minesweeper minesweeper = blank(size, numMines, seed,
+                                        FirstClick.values()[firstClick],
+                                        started);
+        buffer.position(FILE_HEADER_SIZE);
+        LongBuffer planes = buffer.asLongBuffer();
+        planes.get(minesweeper.mines);
+        planes.get(minesweeper.revealed);
+        planes.get(minesweeper.flags);
+        minesweeper.recount();
+        if(minesweeper.countMines() != numMines) {
+            throw new IOException("Corrupt saved game.");
+        }
+        return minesweeper;
+    }
+
+    /**
+     * Returns an independent copy of the game,
+     * which plays on exactly as this one would,
+     * down to the state of its generators.
+     *
+     * @return a copy of the game
+     */
+    public Minesweeper copy() {
+        Minesweeper copy = blank(size, numMines, seed, firstClick, started);
+        System.arraycopy(mines, 0, copy.mines, 0, mines.length);
+        System.arraycopy(revealed, 0, copy.revealed, 0, revealed.length);
+        System.arraycopy(flags, 0, copy.flags, 0, flags.length);
+        System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+        copy.revealedSafe = revealedSafe;
+        copy.revealedMines = revealedMines;
+        copy.numFlags = numFlags;
+        copy.history = history.copy();
+        copy.seeds = seeds.copy();
+        copy.rgen = rgen.copy();
+        return copy;
+    }
+
+    /**
+     * Creates a Minesweeper with the given
+     * settings and planes allocated, ready for
+     * its planes to be filled in.
+     *
+     * @param size The size (edge length) of the board
+     * @param numMines The number of mines in the board
+     * @param seed The seed of the board
+     * @param firstClick The first click protection
+     * @param started True iff a spot has been revealed
+     *
+     * @return the new Minesweeper
+     */
+    private static Minesweeper blank(int size, int numMines, long seed,
+                                     FirstClick firstClick,
+                                     boolean started) {
+        Minesweeper minesweeper =
+            new Minesweeper(size, numMines, new CopyableRandom(seed));
+        if(started) {
+            minesweeper.seed = seed;
+            minesweeper.rgen = new CopyableRandom(seed);
+            minesweeper.clear();
+            minesweeper.numSafe = size * size - numMines;
+        } else {
+            // Regenerate the board to restore the generator
+            // that moves mines on the first reveal
+            minesweeper.reset(seed);
+        }
+        minesweeper.firstClick = firstClick;
+        minesweeper.started = started;
+        return minesweeper;
+    }
+
     /**
      * Returns the size (edge length) of the board.
      *
@@ -58,6 +344,15 @@ public class Minesweeper {
         return size;
     }
 
+    /**
+     * Returns the seed of the current board.
+     *
+     * @return the seed of the current board
+     */
+    public long getSeed() {
+        return seed;
+    }
+
     /**
      * Returns the number of mines in the board.
      *
@@ -78,7 +373,7 @@ public class Minesweeper {
      *              x,y is revealed
      */
     public boolean isRevealed(int x, int y) {
-        return get(x, y).isRevealed();
+        return getBit(revealed, index(x, y));
     }
 
     /**
@@ -92,7 +387,7 @@ public class Minesweeper {
      *              x,y is a mine
      */
     public boolean isMine(int x, int y) {
-        return get(x, y).isMine();
+        return getBit(mines, index(x, y));
     }
 
     /**
@@ -106,7 +401,7 @@ public class Minesweeper {
      *              x,y is flagged
      */
     public boolean isFlag(int x, int y) {
-        return get(x, y).isFlag();
+        return getBit(flags, index(x, y));
     }
 
     /**
@@ -117,23 +412,60 @@ public class Minesweeper {
      *              one revealed mine
      */
     public boolean hasRevealedMine() {
-        for(MineSpot spot : board) {
-            if(spot.isRevealed() && spot.isMine()) {
-                return true;
-            }
+        return revealedMines > 0;
+    }
+
+    /**
+     * Returns the state of the game: lost if
+     * a mine has been revealed, won if every
+     * other spot has been revealed, otherwise
+     * still playing.
+     *
+     * @return the state of the game
+     */
+    public GameState getState() {
+        if(revealedMines > 0) {
+            return GameState.LOST;
+        }
+        if(revealedSafe == numSafe) {
+            return GameState.WON;
         }
-        return false;
+        return GameState.PLAYING;
+    }
+
+    /**
+     * Returns the number of revealed
+     * spots that aren't mines.
+     *
+     * @return the number of revealed
+     *         spots that aren't mines
+     */
+    public int getNumRevealed() {
+        return revealedSafe;
+    }
+
+    /**
+     * Returns the number of flagged spots.
+     *
+     * @return the number of flagged spots
+     */
+    public int getNumFlags() {
+        return numFlags;
     }
 
     /**
      * Reveals all mines.
+     *
+     * @return the mines that weren't
+     *         already revealed
      */
-    public void revealMines() {
-        for(MineSpot spot : board) {
-            if(spot.isMine()) {
-                spot.setRevealed(true);
-            }
+    public CellList revealMines() {
+        CellList opened = new CellList();
+        revealMines(opened);
+        if(!opened.isEmpty()) {
+            history.add(new History.Move(false, opened, null));
         }
+        return opened;
     }
 
     /**
@@ -143,37 +475,100 @@ public class Minesweeper {
      * @param y The y co-ord
      */
     public void toggleFlag(int x, int y) {
-        get(x, y).setFlag(!isFlag(x, y));
+        int i = index(x, y);
+        toggleFlag(i);
+        CellList cells = new CellList(1);
+        cells.add(i);
+        history.add(new History.Move(true, cells, null));
     }
 
     /**
      * Reveals x,y. If x,y has 0 adjacent
-     * mines, floods outwards, recursively
-     * revealing until the edges are reached.
+     * mines, floods outwards, revealing
+     * until the edges are reached.
      * If x,y is a mine, reveals all mines.
+     * If this is the first spot revealed,
+     * it is first made safe as set by
+     * setFirstClick.
+     * The flood is breadth-first, using the
+     * returned list as its queue, so it runs
+     * in constant stack space on any board.
      *
      * @param x The x co-ord
      * @param y The y co-ord
+     *
+     * @return the spots that were opened,
+     *         in the order they were opened
      */
-    public void reveal(int x, int y) {
-        get(x, y).setRevealed(true);
+    public CellList reveal(int x, int y) {
+        long startTime = System.nanoTime();
+        CellList opened = new CellList();
+        int start = index(x, y);
+        if(getBit(revealed, start)) {
+            return opened;
+        }
+        CellList moved = null;
+        if(!started) {
+            started = true;
+            moved = new CellList();
+            makeSafe(x, y, moved);
+        }
+        open(start, opened);
+        history.add(new History.Move(false, opened,
+            moved == null ? null : moved.toArray()));
+        Metrics.REVEAL_NANOS.record(System.nanoTime() - startTime);
+        Metrics.FLOOD_SIZE.record(opened.size());
+        return opened;
+    }
 
-        if(getNumAdjacentMines(x, y) == 0) {
-            for(int i = x - 1; i <= x + 1; i++) {
-                for(int j = y - 1; j <= y + 1; j++) {
-                    if(i == x && j == y) continue;
-                    if(i < 0 || j < 0) continue;
-                    if(i >= size || j >= size) continue;
-                    if(!isRevealed(i, j)) {
-                        reveal(i, j);
-                    }
+    /**
+     * Chords x,y: if it is a revealed number
+     * with exactly that many flags around it,
+     * reveals every unflagged neighbour as
+     * reveal does. This is a single move, so
+     * one undo hides everything it revealed.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the spots that were opened,
+     *         empty if x,y can't be chorded
+     */
+    public CellList chord(int x, int y) {
+        CellList opened = new CellList();
+        int centre = index(x, y);
+        if(!getBit(revealed, centre) || getBit(mines, centre)) {
+            return opened;
+        }
+        int flagged = 0;
+        for(int i = x - 1; i <= x + 1; i++) {
+            for(int j = y - 1; j <= y + 1; j++) {
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                if(getBit(flags, index(i, j))) {
+                    flagged++;
                 }
             }
         }
-
-        if(get(x, y).isMine()) {
-            revealMines();
+        if(flagged != count(centre)) {
+            return opened;
+        }
+        for(int i = x - 1; i <= x + 1; i++) {
+            for(int j = y - 1; j <= y + 1; j++) {
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                int neighbour = index(i, j);
+                if(revealedMines > 0) {
+                    // A wrong flag lost the game
+                    break;
+                }
+                if(!getBit(revealed, neighbour) && !getBit(flags, neighbour)) {
+                    open(neighbour, opened);
+                }
+            }
         }
+        if(!opened.isEmpty()) {
+            history.add(new History.Move(false, opened, null));
+        }
+        return opened;
     }
 
     /**
@@ -187,18 +582,211 @@ public class Minesweeper {
      *         adjacent to x,y
      */
     public int getNumAdjacentMines(int x, int y) {
-        int num = 0;
-        for(int i = x - 1; i <= x + 1; i++) {
-            for(int j = y - 1; j <= y + 1; j++) {
-                if(i == x && j == y) continue;
-                if(i < 0 || j < 0) continue;
-                if(i >= size || j >= size) continue;
-                if(isMine(i, j)) {
-                    num++;
-                }
+        return count(index(x, y));
+    }
+
+    /**
+     * Writes the visible state of every spot
+     * into the given array, indexed by x + y*size.
+     *
+     * @param dest The array, at least size*size long
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the array is too short
+     *
+     * @see #exportState(int, int, int, int, byte[], int)
+     */
+    public void exportState(byte[] dest) {
+        exportState(0, 0, size, size, dest, 0);
+    }
+
+    /**
+     * Writes the visible state of each spot in
+     * the given rectangle into the given array,
+     * a row at a time: 0 to 8 for a revealed
+     * number, REVEALED_MINE, FLAGGED or HIDDEN.
+     * Unrevealed spots never show whether they
+     * are mines, so this is all a player could
+     * see. It reads the planes directly and
+     * allocates nothing, so it is much faster
+     * than asking about each spot in turn.
+     *
+     * @param x The x co-ord of the top left spot
+     * @param y The y co-ord of the top left spot
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     * @param dest The array to write into
+     * @param offset Where in the array to start
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the rectangle isn't on the board,
+     *         or doesn't fit in the array
+     */
+    public void exportState(int x, int y, int width, int height,
+                            byte[] dest, int offset) {
+        checkRectangle(x, y, width, height);
+        if(offset < 0 || dest.length - offset < width * height) {
+            throw new IndexOutOfBoundsException(
+                width + "x" + height + " spots don't fit in "
+                + dest.length + " bytes from " + offset + ".");
+        }
+        for(int row = y; row < y + height; row++) {
+            exportRow(index(x, row), width, dest, offset);
+            offset += width;
+        }
+    }
+
+    /**
+     * Writes the visible state of every spot
+     * into the given buffer, indexed by
+     * x + y*size from its position, which
+     * is moved past them.
+     *
+     * @param dest The buffer
+     *
+     * @throws BufferOverflowException
+     *         if the buffer has too little room
+     *
+     * @see #exportState(int, int, int, int, byte[], int)
+     */
+    public void exportState(ByteBuffer dest) {
+        exportState(0, 0, size, size, dest);
+    }
+
+    /**
+     * Writes the visible state of each spot in
+     * the given rectangle into the given buffer,
+     * a row at a time from its position, which
+     * is moved past them.
+     *
+     * @param x The x co-ord of the top left spot
+     * @param y The y co-ord of the top left spot
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     * @param dest The buffer
+     *
+     * @throws IndexOutOfBoundsException
+     *         if the rectangle isn't on the board
+     * @throws BufferOverflowException
+     *         if the buffer has too little room
+     *
+     * @see #exportState(int, int, int, int, byte[], int)
+     */
+    public void exportState(int x, int y, int width, int height,
+                            ByteBuffer dest) {
+        checkRectangle(x, y, width, height);
+        int length = width * height;
+        if(dest.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        if(dest.hasArray()) {
+            exportState(x, y, width, height, dest.array(),
+                        dest.arrayOffset() + dest.position());
+            dest.position(dest.position() + length);
+            return;
+        }
+        for(int row = y; row < y + height; row++) {
+            int end = index(x + width, row);
+            for(int cell = index(x, row); cell < end; cell++) {
+                dest.put(state(cell));
             }
         }
-        return num;
+    }
+
+    /**
+     * Sets the pool that floods with a wide
+     * frontier are expanded on, a level at a
+     * time. Floods smaller than the threshold
+     * stay on the calling thread. The spots
+     * revealed are the same either way, though
+     * reveal may list them in another order.
+     *
+     * @param floodPool The pool, or null to
+     *                  always flood sequentially
+     */
+    public void setFloodPool(ForkJoinPool floodPool) {
+        this.floodPool = floodPool;
+    }
+
+    /**
+     * Returns the pool that wide floods are
+     * expanded on, or null if there is none.
+     *
+     * @return the pool, or null
+     */
+    public ForkJoinPool getFloodPool() {
+        return floodPool;
+    }
+
+    /**
+     * Undoes the most recent move on this
+     * board that hasn't been undone. Each move
+     * keeps only the spots it changed, so the
+     * history grows with the number of spots
+     * changed rather than the board size.
+     *
+     * @return the move undone, or null
+     *         if there was none
+     */
+    public History.Move undo() {
+        History.Move move = history.undo();
+        if(move != null) {
+            reverse(move);
+        }
+        return move;
+    }
+
+    /**
+     * Redoes the most recently undone move,
+     * if no move has been made since.
+     *
+     * @return the move redone, or null
+     *         if there was none
+     */
+    public History.Move redo() {
+        History.Move move = history.redo();
+        if(move != null) {
+            replay(move);
+        }
+        return move;
+    }
+
+    /**
+     * Returns true iff there is a move to undo.
+     *
+     * @return true iff there is a move to undo
+     */
+    public boolean canUndo() {
+        return history.canUndo();
+    }
+
+    /**
+     * Returns true iff there is a move to redo.
+     *
+     * @return true iff there is a move to redo
+     */
+    public boolean canRedo() {
+        return history.canRedo();
+    }
+
+    /**
+     * Sets how the first spot revealed on
+     * each board is protected from mines.
+     *
+     * @param firstClick The protection
+     */
+    public void setFirstClick(FirstClick firstClick) {
+        this.firstClick = firstClick;
+    }
+
+    /**
+     * Returns how the first spot revealed on
+     * each board is protected from mines.
+     *
+     * @return the protection
+     */
+    public FirstClick getFirstClick() {
+        return firstClick;
     }
 
     /**
@@ -207,96 +795,709 @@ public class Minesweeper {
      * @param numMines The number of mines
      */
     public void setNumMines(int numMines) {
+        checkNumMines(size, numMines);
         this.numMines = numMines;
     }
 
     /**
-     * Returns the MineSpot at x,y
-     * from the board array.
+     * Reveals all mines, adding those
+     * that weren't already revealed
+     * to the given list.
      *
-     * @param x The x co-ord
-     * @param y The y co-ord
+     * @param opened The list to add to
+     */
+    private void revealMines(CellList opened) {
+        for(int w = 0; w < mines.length; w++) {
+            long hidden = mines[w] & ~revealed[w];
+            revealed[w] |= hidden;
+            revealedMines += Long.bitCount(hidden);
+            while(hidden != 0) {
+                opened.add((w << 6) + Long.numberOfTrailingZeros(hidden));
+                hidden &= hidden - 1;
+            }
+        }
+    }
+
+    /**
+     * Places the mines by picking spots uniformly
+     * at random and retrying any that already
+     * hold a mine, using the mine plane as the
+     * set of taken spots. With at most half the
+     * spots taken, each mine needs at most two
+     * tries on average.
      *
-     * @return the MineSpot at x,y
-     *         from the board array
+     * @param numSpots The number of spots
      */
-    private MineSpot get(int x, int y) {
-        return board[x + y*size];
+    private void placeMinesSparse(int numSpots) {
+        int placed = 0;
+        while(placed < numMines) {
+            int index = rgen.nextInt(numSpots);
+            if(!getBit(mines, index)) {
+                setBit(mines, index, true);
+                placed++;
+            }
+        }
     }
 
     /**
-     * Represents a single spot
-     * in the minesweeper board
+     * Places the mines with a partial
+     * Fisher-Yates shuffle of the spots,
+     * stopping once the first numMines
+     * spots have been chosen.
+     *
+     * @param numSpots The number of spots
      */
-    private static class MineSpot {
-        private boolean mine;
-        private boolean revealed;
-        private boolean flag;
+    private void placeMinesDense(int numSpots) {
+        int[] spots = new int[numSpots];
+        for(int i = 0; i < numSpots; i++) {
+            spots[i] = i;
+        }
+        for(int i = 0; i < numMines; i++) {
+            int j = i + rgen.nextInt(numSpots - i);
+            int spot = spots[j];
+            spots[j] = spots[i];
+            spots[i] = spot;
+            setBit(mines, spot, true);
+        }
+    }
 
-        /**
-         * Creates a MineSpot.
-         * By default, it is not
-         * a mine, not revealed
-         * and not flagged.
-         */
-        public MineSpot() {
-            mine = false;
-            revealed = false;
-            flag = false;
+    /**
+     * Fills the count plane from the mine
+     * plane in a single pass over the mines,
+     * adding one to each spot around each mine.
+     */
+    private void countAdjacentMines() {
+        for(int w = 0; w < mines.length; w++) {
+            long bits = mines[w];
+            while(bits != 0) {
+                int mine = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                addToCounts(mine, 1);
+            }
         }
+    }
 
-        /**
-         * Returns true iff this is a mine.
-         *
-         * @return true iff this is a mine
-         */
-        public boolean isMine() {
-            return mine;
+    /**
+     * Creates an empty board, reusing
+     * the planes if the size is unchanged.
+     */
+    private void clear() {
+        history.clear();
+        int numSpots = size * size;
+        int numWords = (numSpots + 63) >>> 6;
+        if(mines == null || mines.length != numWords) {
+            mines = new long[numWords];
+            revealed = new long[numWords];
+            flags = new long[numWords];
+            counts = new long[(numSpots + 15) >>> 4];
+        } else {
+            Arrays.fill(mines, 0L);
+            Arrays.fill(revealed, 0L);
+            Arrays.fill(flags, 0L);
+            Arrays.fill(counts, 0L);
+        }
+    }
+
+    /**
+     * Returns the number of bits
+     * set in the mine plane.
+     *
+     * @return the number of mines placed
+     */
+    private int countMines() {
+        int placed = 0;
+        for(long word : mines) {
+            placed += Long.bitCount(word);
+        }
+        return placed;
+    }
+
+    /**
+     * Rebuilds the count plane and the running
+     * totals from the mine, revealed and flag
+     * planes, a word at a time.
+     */
+    private void recount() {
+        Arrays.fill(counts, 0L);
+        countAdjacentMines();
+        int numSpots = size * size;
+        numSafe = numSpots - numMines;
+        revealedSafe = 0;
+        revealedMines = 0;
+        numFlags = 0;
+        for(int w = 0; w < mines.length; w++) {
+            revealedSafe += Long.bitCount(revealed[w] & ~mines[w]);
+            revealedMines += Long.bitCount(revealed[w] & mines[w]);
+            numFlags += Long.bitCount(flags[w]);
         }
+    }
+
+    /**
+     * Adds the given amount to the counts
+     * of the spots around the given spot.
+     *
+     * @param cell The spot's index
+     * @param delta 1 if a mine was placed there,
+     *              -1 if one was removed
+     */
+    private void addToCounts(int cell, int delta) {
+        int cx = cell % size;
+        int cy = cell / size;
+        for(int i = cx - 1; i <= cx + 1; i++) {
+            for(int j = cy - 1; j <= cy + 1; j++) {
+                if(i == cx && j == cy) continue;
+                if(i < 0 || j < 0) continue;
+                if(i >= size || j >= size) continue;
+                // Counts stay between 0 and 8, so
+                // this can't carry or borrow across
+                // the neighbouring nibbles
+                int n = index(i, j);
+                counts[n >>> 4] += (long)delta << ((n & 15) << 2);
+            }
+        }
+    }
+
+    /**
+     * Makes the first revealed spot safe by
+     * moving any mines from it, or from around
+     * it for a safe opening, to random free
+     * spots elsewhere. Only the counts around
+     * the moved mines change. While at least
+     * half the spots are free, each new spot
+     * takes at most two tries on average, so
+     * this costs O(1) expected time whatever
+     * the board size. Fuller boards draw from
+     * a list of the free spots instead, which
+     * costs O(spots), as placing their mines did.
+     *
+     * @param x The x co-ord of the first spot
+     * @param y The y co-ord of the first spot
+     * @param moved The list to add the from and
+     *              to index of each moved mine to
+     */
+    private void makeSafe(int x, int y, CellList moved) {
+        if(firstClick == FirstClick.UNSAFE) {
+            return;
+        }
+        int radius = firstClick == FirstClick.SAFE_OPENING ? 1 : 0;
+        int minX = Math.max(0, x - radius);
+        int minY = Math.max(0, y - radius);
+        int maxX = Math.min(size - 1, x + radius);
+        int maxY = Math.min(size - 1, y + radius);
+        int numSpots = size * size;
+        int areaSpots = (maxX - minX + 1) * (maxY - minY + 1);
+        if(numSpots - areaSpots < numMines) {
+            // No room for an opening,
+            // so just make the spot safe
+            minX = maxX = x;
+            minY = maxY = y;
+            areaSpots = 1;
+            if(numSpots - 1 < numMines) {
+                return;
+            }
+        }
+        int toMove = 0;
+        for(int i = minX; i <= maxX; i++) {
+            for(int j = minY; j <= maxY; j++) {
+                if(getBit(mines, index(i, j))) {
+                    toMove++;
+                }
+            }
+        }
+        if(toMove == 0) {
+            return;
+        }
+        // The free spots outside the area
+        int free = numSpots - numMines - (areaSpots - toMove);
+        int[] freeSpots = null;
+        if(2L * free < numSpots) {
+            freeSpots = new int[free];
+            int n = 0;
+            for(int w = 0; w < mines.length; w++) {
+                long bits = ~mines[w];
+                if(w == mines.length - 1 && (numSpots & 63) != 0) {
+                    bits &= -1L >>> (64 - (numSpots & 63));
+                }
+                while(bits != 0) {
+                    int spot = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    if(!inArea(spot, minX, minY, maxX, maxY)) {
+                        freeSpots[n++] = spot;
+                    }
+                }
+            }
+        }
+        for(int i = minX; i <= maxX; i++) {
+            for(int j = minY; j <= maxY; j++) {
+                int mine = index(i, j);
+                if(!getBit(mines, mine)) continue;
+                int spot;
+                if(freeSpots == null) {
+                    do {
+                        spot = rgen.nextInt(numSpots);
+                    } while(getBit(mines, spot)
+                         || inArea(spot, minX, minY, maxX, maxY));
+                } else {
+                    // Draw without replacement
+                    int k = rgen.nextInt(free);
+                    spot = freeSpots[k];
+                    freeSpots[k] = freeSpots[--free];
+                }
+                moveMine(mine, spot);
+                moved.add(mine);
+                moved.add(spot);
+            }
+        }
+    }
+
+    /**
+     * Returns true iff the spot at the given
+     * index is in the given rectangle.
+     *
+     * @param spot The spot's index
+     * @param minX The x co-ord of the left edge
+     * @param minY The y co-ord of the top edge
+     * @param maxX The x co-ord of the right edge
+     * @param maxY The y co-ord of the bottom edge
+     *
+     * @return true iff the spot is in the rectangle
+     */
+    private boolean inArea(int spot, int minX, int minY,
+                           int maxX, int maxY) {
+        int x = spot % size;
+        int y = spot / size;
+        return x >= minX && x <= maxX && y >= minY && y <= maxY;
+    }
+
+    /**
+     * Moves a mine, updating the
+     * counts around both spots.
+     *
+     * @param from The mine's index
+     * @param to The index of the free
+     *           spot to move it to
+     */
+    private void moveMine(int from, int to) {
+        setBit(mines, from, false);
+        addToCounts(from, -1);
+        setBit(mines, to, true);
+        addToCounts(to, 1);
+    }
+
+    /**
+     * Reveals the unrevealed spot at the
+     * given index and floods out from it,
+     * adding the spots opened to the list.
+     * If it is a mine, reveals all mines.
+     *
+     * @param start The spot's index
+     * @param opened The list to add to,
+     *               which is used as the
+     *               flood's queue
+     */
+    private void open(int start, CellList opened) {
+        int first = opened.size();
+        setBit(revealed, start, true);
+        opened.add(start);
+
+        int head = first;
+        while(head < opened.size()) {
+            if(floodPool != null
+            && opened.size() - head >= PARALLEL_THRESHOLD) {
+                // Expand the whole frontier at once
+                int end = opened.size();
+                opened.addAll(floodPool.invoke(new Flood(opened, head, end)));
+                head = end;
+                continue;
+            }
+            int cell = opened.get(head++);
+            int cx = cell % size;
+            int cy = cell / size;
+            if(count(cell) != 0) continue;
+            for(int i = cx - 1; i <= cx + 1; i++) {
+                for(int j = cy - 1; j <= cy + 1; j++) {
+                    if(i == cx && j == cy) continue;
+                    if(i < 0 || j < 0) continue;
+                    if(i >= size || j >= size) continue;
+                    int neighbour = index(i, j);
+                    if(!getBit(revealed, neighbour)) {
+                        setBit(revealed, neighbour, true);
+                        opened.add(neighbour);
+                    }
+                }
+            }
+        }
+
+        if(getBit(mines, start)) {
+            revealedSafe += opened.size() - first - 1;
+            revealedMines++;
+            revealMines(opened);
+        } else {
+            revealedSafe += opened.size() - first;
+        }
+    }
+
+    /**
+     * Toggles whether the spot at the
+     * given index is flagged.
+     *
+     * @param i The spot's index
+     */
+    private void toggleFlag(int i) {
+        flags[i >>> 6] ^= 1L << i;
+        numFlags += getBit(flags, i) ? 1 : -1;
+    }
+
+    /**
+     * Reverses a move: hides the spots it
+     * revealed, putting back any mines moved
+     * off the first one, or toggles its flag.
+     *
+     * @param move The move
+     */
+    private void reverse(History.Move move) {
+        CellList cells = move.getCells();
+        if(move.isFlag()) {
+            toggleFlag(cells.get(0));
+            return;
+        }
+        for(int i = 0; i < cells.size(); i++) {
+            int cell = cells.get(i);
+            setBit(revealed, cell, false);
+            if(getBit(mines, cell)) {
+                revealedMines--;
+            } else {
+                revealedSafe--;
+            }
+        }
+        int[] moved = move.getMoved();
+        if(moved != null) {
+            for(int i = moved.length - 2; i >= 0; i -= 2) {
+                moveMine(moved[i + 1], moved[i]);
+            }
+            started = false;
+        }
+    }
+
+    /**
+     * Makes a move again after it was
+     * reversed, without repeating the
+     * flood fill or the random choices.
+     *
+     * @param move The move
+     */
+    private void replay(History.Move move) {
+        CellList cells = move.getCells();
+        if(move.isFlag()) {
+            toggleFlag(cells.get(0));
+            return;
+        }
+        int[] moved = move.getMoved();
+        if(moved != null) {
+            for(int i = 0; i < moved.length; i += 2) {
+                moveMine(moved[i], moved[i + 1]);
+            }
+            started = true;
+        }
+        for(int i = 0; i < cells.size(); i++) {
+            int cell = cells.get(i);
+            setBit(revealed, cell, true);
+            if(getBit(mines, cell)) {
+                revealedMines++;
+            } else {
+                revealedSafe++;
+            }
+        }
+    }
+
+    /**
+     * Sets the bit at the given index atomically,
+     * for floods running on many threads.
+     *
+     * @param plane The bit plane
+     * @param i The index of the bit
+     *
+     * @return true iff this call set the bit
+     */
+    private static boolean claimBit(long[] plane, int i) {
+        int word = i >>> 6;
+        long bit = 1L << i;
+        while(true) {
+            long old = (long)WORDS.getVolatile(plane, word);
+            if((old & bit) != 0) {
+                return false;
+            }
+            if(WORDS.compareAndSet(plane, word, old, old | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Expands one level of a flood: reveals
+     * the unrevealed neighbours of the spots
+     * in part of the frontier that have no
+     * adjacent mines. Each spot is claimed
+     * with a compare-and-set, so spots shared
+     * by several tasks are revealed once.
+     */
+    private class Flood extends RecursiveTask<CellList> {
+        private CellList frontier;
+        private int from, to;
 
         /**
-         * Returns true iff this is revealed.
+         * Creates a Flood of part of the frontier.
          *
-         * @return true iff this is revealed
+         * @param frontier The list holding the frontier
+         * @param from The first position to expand
+         * @param to The position after the last
          */
-        public boolean isRevealed() {
-            return revealed;
+        public Flood(CellList frontier, int from, int to) {
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
         }
 
         /**
-         * Returns true iff this is flagged.
+         * Expands the spots, splitting the
+         * work while there is enough of it.
          *
-         * @return true iff this is flagged
+         * @return the spots newly revealed
          */
-        public boolean isFlag() {
-            return flag;
+        protected CellList compute() {
+            if(to - from > FLOOD_LEAF) {
+                int mid = (from + to) >>> 1;
+                Flood left = new Flood(frontier, from, mid);
+                left.fork();
+                CellList opened = new Flood(frontier, mid, to).compute();
+                opened.addAll(left.join());
+                return opened;
+            }
+            CellList opened = new CellList();
+            for(int n = from; n < to; n++) {
+                int cell = frontier.get(n);
+                if(count(cell) != 0) continue;
+                int cx = cell % size;
+                int cy = cell / size;
+                for(int i = cx - 1; i <= cx + 1; i++) {
+                    for(int j = cy - 1; j <= cy + 1; j++) {
+                        if(i == cx && j == cy) continue;
+                        if(i < 0 || j < 0) continue;
+                        if(i >= size || j >= size) continue;
+                        int neighbour = index(i, j);
+                        if(claimBit(revealed, neighbour)) {
+                            opened.add(neighbour);
+                        }
+                    }
+                }
+            }
+            return opened;
+        }
+    }
+
+    /**
+     * Checks that a board of the given size
+     * can hold the given number of mines.
+     * Spots are indexed by int, so boards
+     * with more spots than that can hold
+     * need LargeMinesweeper.
+     *
+     * @param size The size (edge length) of the board
+     * @param numMines The number of mines
+     *
+     * @throws IllegalArgumentException
+     *         if the board is too big, or
+     *         there are too many mines
+     */
+    private static void checkNumMines(int size, int numMines) {
+        if(size < 1 || (long)size * size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "A board must be from 1x1 to 46340x46340; " +
+                "use LargeMinesweeper for bigger boards.");
+        }
+        if(numMines < 0) {
+            throw new IllegalArgumentException(
+                "The number of mines can't be negative.");
+        }
+        if(numMines > (long)size * size) {
+            throw new IllegalArgumentException(
+                "You cannot have more mines than there are " +
+                "spaces on the board to hold them.");
+        }
+    }
+
+    /**
+     * Returns the number of mines adjacent
+     * to the spot at the given index.
+     *
+     * @param i The spot's index
+     *
+     * @return the spot's adjacent mine count
+     */
+    private int count(int i) {
+        return (int)(counts[i >>> 4] >>> ((i & 15) << 2)) & 0xF;
+    }
+
+    /**
+     * Writes the visible state of a run of
+     * spots into the given array, a word of
+     * the planes at a time. Words with nothing
+     * revealed or flagged, and words revealed
+     * with no mines, are the bulk of most
+     * boards and skip the per-spot checks.
+     *
+     * @param cell The index of the first spot
+     * @param length The number of spots
+     * @param dest The array to write into
+     * @param offset Where in the array to start
+     */
+    private void exportRow(int cell, int length, byte[] dest, int offset) {
+        int end = cell + length;
+        while(cell < end) {
+            int w = cell >>> 6;
+            int n = Math.min(end, (w + 1) << 6) - cell;
+            // The bits of this word in the run
+            long mask = (n == 64 ? -1L : (1L << n) - 1) << cell;
+            long shown = revealed[w] & mask;
+            if(shown == 0 && (flags[w] & mask) == 0) {
+                Arrays.fill(dest, offset, offset + n, HIDDEN);
+            } else if(shown == mask && (mines[w] & mask) == 0) {
+                exportCounts(cell, n, dest, offset);
+            } else {
+                for(int i = 0; i < n; i++) {
+                    dest[offset + i] = state(cell + i);
+                }
+            }
+            cell += n;
+            offset += n;
+        }
+    }
+
+    /**
+     * Writes the adjacent mine counts of a run
+     * of spots into the given array, unpacking
+     * each word of counts in turn.
+     *
+     * @param cell The index of the first spot
+     * @param length The number of spots
+     * @param dest The array to write into
+     * @param offset Where in the array to start
+     */
+    private void exportCounts(int cell, int length, byte[] dest, int offset) {
+        int end = offset + length;
+        while(offset < end) {
+            long word = counts[cell >>> 4] >>> ((cell & 15) << 2);
+            int n = Math.min(end - offset, 16 - (cell & 15));
+            for(int i = 0; i < n; i++) {
+                dest[offset + i] = (byte)(word & 0xF);
+                word >>>= 4;
+            }
+            cell += n;
+            offset += n;
         }
+    }
 
+    /**
+     * Returns the visible state of the spot
+     * at the given index, as exportState
+     * writes it.
+     *
+     * @param cell The spot's index
+     *
+     * @return the spot's visible state
+     */
+    private byte state(int cell) {
+        int w = cell >>> 6;
+        long bit = 1L << cell;
+        if((revealed[w] & bit) != 0) {
+            return (mines[w] & bit) != 0 ? REVEALED_MINE : (byte)count(cell);
+        }
+        return (flags[w] & bit) != 0 ? FLAGGED : HIDDEN;
+    }
+
+    /**
+     * Checks that a rectangle lies on the board.
+     *
+     * @param x The x co-ord of the top left spot
+     * @param y The y co-ord of the top left spot
+     * @param width The width of the rectangle
+     * @param height The height of the rectangle
+     *
+     * @throws IndexOutOfBoundsException
+     *         if it doesn't
+     */
+    private void checkRectangle(int x, int y, int width, int height) {
+        if(x < 0 || y < 0 || width < 0 || height < 0
+        || x > size - width || y > size - height) {
+            throw new IndexOutOfBoundsException(
+                width + "x" + height + " at " + x + "," + y
+                + " is off the " + size + "x" + size + " board.");
+        }
+    }
+
+    /**
+     * Returns the index of x,y
+     * in the bit planes.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the index of x,y
+     *         in the bit planes
+     */
+    private int index(int x, int y) {
+        return x + y*size;
+    }
+
+    /**
+     * Returns true iff the given bit
+     * is set in the given plane.
+     *
+     * @param plane The bit plane
+     * @param i The bit index
+     *
+     * @return true iff the bit is set
+     */
+    private static boolean getBit(long[] plane, int i) {
+        return (plane[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Sets or clears the given bit
+     * in the given plane.
+     *
+     * @param plane The bit plane
+     * @param i The bit index
+     * @param value True iff the bit should be set
+     */
+    private static void setBit(long[] plane, int i, boolean value) {
+        if(value) {
+            plane[i >>> 6] |= 1L << i;
+        } else {
+            plane[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    /**
+     * How the first spot revealed on a
+     * board is protected from mines.
+     */
+    public enum FirstClick {
         /**
-         * Sets whether or not this is a mine.
-         *
-         * @param mine True iff this is a mine
+         * The first spot may be a mine.
          */
-        public void setMine(boolean mine) {
-            this.mine = mine;
-        }
+        UNSAFE,
 
         /**
-         * Sets whether or not this is revealed.
-         *
-         * @param revealed True iff this is revealed
+         * The first spot is never a mine.
          */
-        public void setRevealed(boolean revealed) {
-            this.revealed = revealed;
-        }
+        SAFE_SPOT,
 
         /**
-         * Sets whether or not this is flagged.
-         *
-         * @param flag True iff this is flagged
+         * Neither the first spot nor its
+         * neighbours are mines, so it
+         * always opens an area.
          */
-        public void setFlag(boolean flag) {
-            this.flag = flag;
-        }
+        SAFE_OPENING
     }
 }
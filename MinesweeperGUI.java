@@ -1,22 +1,58 @@
+import java.beans.*;
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.*;
 public class MinesweeperGUI {
+    // Boards bigger than this are drawn by a
+    // single CanvasBoardView in a scroll pane
+    // rather than a BoardView of buttons
+    private static final int MAX_BUTTON_BOARD_SIZE = 40;
+
     /**
      * The program's entry point.
+     * Optionally takes the board size
+     * and number of mines as arguments.
      *
      * @param args The command-line arguments
      */
     public static void main(String[] args) {
+        // Decode the tiles while the window is built
+        TileAtlas.preload();
+        Metrics.register();
+        Metrics.startLogging(60);
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int numMines = args.length > 1 ? Integer.parseInt(args[1]) : 15;
         JFrame frame = new JFrame("Minesweeper");
-        MineModel model = new MineModel(new Minesweeper(10, 15));
+        Minesweeper minesweeper = new Minesweeper(size, numMines);
+        MineModel model = new MineModel(minesweeper);
         ControlPanel controls = new ControlPanel(model);
-        BoardView view = new BoardView(model);
-        model.addObserver(view);
-        frame.add(view);
+        if(size > MAX_BUTTON_BOARD_SIZE) {
+            // One click can open most of a big board
+            minesweeper.setFloodPool(ForkJoinPool.commonPool());
+            final CanvasBoardView view = new CanvasBoardView(model);
+            model.addListener(new RepaintScheduler(view));
+            controls.addPropertyChangeListener("showHints",
+                new PropertyChangeListener() {
+                    public void propertyChange(PropertyChangeEvent e) {
+                        view.setShowHints((Boolean)e.getNewValue());
+                    }
+                });
+            frame.add(new JScrollPane(view));
+        } else {
+            final BoardView view = new BoardView(model);
+            model.addListener(new RepaintScheduler(view));
+            controls.addPropertyChangeListener("showHints",
+                new PropertyChangeListener() {
+                    public void propertyChange(PropertyChangeEvent e) {
+                        view.setShowHints((Boolean)e.getNewValue());
+                    }
+                });
+            frame.add(view);
+            frame.setResizable(false);
+        }
         frame.setJMenuBar(controls);
         frame.pack();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setLocationRelativeTo(null);
-        frame.setResizable(false);
         frame.setVisible(true);
     }
 }
@@ -0,0 +1,934 @@
+import java.util.*;
+public class ProbabilityEngine {
+    // Solutions of the components seen by the
+    // last call to compute, by their constraints
+    private Map<Component, Solution> cache;
+    private int solved;
+    private int swept;
+    // The visible state of each spot, kept
+    // to be reused while the size is the same
+    private byte[] state = new byte[0];
+
+    /**
+     * Creates a ProbabilityEngine
+     * with an empty cache.
+     */
+    public ProbabilityEngine() {
+        cache = new HashMap<Component, Solution>();
+    }
+
+    /**
+     * Returns the exact probability that each
+     * spot is a mine, given only the revealed
+     * numbers and the total number of mines.
+     * Flags are ignored, as they may be wrong.
+     *
+     * @param model The game to look at
+     *
+     * @return the probability that each spot is a
+     *         mine, indexed by x + y*size
+     *
+     * @see #compute(byte[], int, int)
+     */
+    public synchronized double[] compute(MineModel model) {
+        int size;
+        int numMines;
+        // Hold the model still while copying it,
+        // so a move can't change it part way through
+        synchronized(model) {
+            size = model.getSize();
+            if(state.length != size * size) {
+                state = new byte[size * size];
+            }
+            model.exportState(state);
+            numMines = model.getNumMines();
+        }
+        return compute(state, size, numMines);
+    }
+
+    /**
+     * Returns the exact probability that each
+     * spot is a mine in a game with the given
+     * visible state, as Minesweeper.exportState
+     * writes it. Working from a copy of the
+     * state lets this run on any thread while
+     * the game goes on.
+     * <p>
+     * The unknown spots next to revealed numbers
+     * are split into components which share no
+     * numbers, and each component's solutions are
+     * counted by number of mines, by sweeping
+     * across its spots and merging the partial
+     * solutions that leave its numbers in the
+     * same state. Components are cached by their
+     * constraints, so after a move only the
+     * components it changed are counted again.
+     *
+     * @param state The visible state of each
+     *              spot, indexed by x + y*size
+     * @param size The size (edge length) of the board
+     * @param numMines The number of mines in the board
+     *
+     * @return the probability that each spot is a
+     *         mine, indexed by x + y*size: 0 or 1
+     *         for revealed spots, and NaN for every
+     *         unknown spot if the numbers can't all
+     *         be satisfied
+     */
+    public synchronized double[] compute(byte[] state, int size, int numMines) {
+        int numSpots = size * size;
+        double[] probabilities = new double[numSpots];
+
+        // Find the unknown spots, and the revealed mines,
+        // which count as known mines in the numbers
+        boolean[] unknown = new boolean[numSpots];
+        int remainingMines = numMines;
+        int numUnknown = 0;
+        for(int i = 0; i < numSpots; i++) {
+            if(state[i] == Minesweeper.HIDDEN || state[i] == Minesweeper.FLAGGED) {
+                unknown[i] = true;
+                numUnknown++;
+            } else if(state[i] == Minesweeper.REVEALED_MINE) {
+                probabilities[i] = 1;
+                remainingMines--;
+            }
+        }
+
+        // Turn every revealed number next to an
+        // unknown spot into a constraint, joining
+        // the spots it mentions into one component
+        int[] parent = new int[numSpots];
+        Arrays.fill(parent, -1);
+        List<int[]> constraints = new ArrayList<int[]>();
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                int value = state[x + y*size];
+                if(value >= Minesweeper.HIDDEN) continue;
+                CellList cells = new CellList(8);
+                for(int j = y - 1; j <= y + 1; j++) {
+                    for(int i = x - 1; i <= x + 1; i++) {
+                        if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                        if(unknown[i + j*size]) {
+                            cells.add(i + j*size);
+                        } else if(state[i + j*size] == Minesweeper.REVEALED_MINE) {
+                            value--;
+                        }
+                    }
+                }
+                if(cells.isEmpty()) continue;
+                // Stored as value, then the spots
+                int[] constraint = new int[cells.size() + 1];
+                constraint[0] = value;
+                for(int c = 0; c < cells.size(); c++) {
+                    constraint[c + 1] = cells.get(c);
+                    if(parent[cells.get(c)] == -1) {
+                        parent[cells.get(c)] = cells.get(c);
+                    }
+                    union(parent, cells.get(0), cells.get(c));
+                }
+                constraints.add(constraint);
+            }
+        }
+
+        // Group the constraints by component, in board
+        // order, so equal components get equal keys
+        Map<Integer, List<int[]>> groups =
+            new LinkedHashMap<Integer, List<int[]>>();
+        for(int[] constraint : constraints) {
+            int root = find(parent, constraint[1]);
+            List<int[]> group = groups.get(root);
+            if(group == null) {
+                group = new ArrayList<int[]>();
+                groups.put(root, group);
+            }
+            group.add(constraint);
+        }
+
+        Map<Component, Solution> used = new HashMap<Component, Solution>();
+        List<Component> components = new ArrayList<Component>();
+        List<Solution> solutions = new ArrayList<Solution>();
+        int frontier = 0;
+        for(List<int[]> group : groups.values()) {
+            Component component = new Component(group);
+            Solution solution = cache.get(component);
+            if(solution == null) {
+                solution = new Solution(component.cells, component.constraints);
+                solved++;
+            }
+            used.put(component, solution);
+            components.add(component);
+            solutions.add(solution);
+            frontier += component.cells.length;
+        }
+        // Keep only what this board uses, so
+        // the cache never outgrows the board
+        cache = used;
+
+        combine(components, solutions, numUnknown - frontier,
+                remainingMines, unknown, probabilities);
+        return probabilities;
+    }
+
+    /**
+     * Returns the number of components that have
+     * been solved rather than found in the cache.
+     *
+     * @return the number of components solved
+     */
+    public int getNumSolved() {
+        return solved;
+    }
+
+    /**
+     * Returns the number of sweeps made over
+     * components' spots. Solving a component
+     * sweeps it forward and back once, and a
+     * cached one isn't swept again.
+     *
+     * @return the number of sweeps
+     */
+    public int getNumSwept() {
+        return swept;
+    }
+
+    /**
+     * Combines the components' solutions with
+     * the number of ways to place the remaining
+     * mines among the spots outside them, and
+     * fills in the unknown spots' probabilities.
+     *
+     * @param components The components
+     * @param solutions Their solutions
+     * @param numOthers The number of unknown
+     *                  spots in no component
+     * @param remainingMines The number of mines
+     *                       that aren't revealed
+     * @param unknown Which spots are unknown
+     * @param probabilities The array to fill in
+     */
+    private void combine(List<Component> components,
+                         List<Solution> solutions,
+                         int numOthers, int remainingMines,
+                         boolean[] unknown, double[] probabilities) {
+        int n = solutions.size();
+        // prefix[c] counts the ways for components before c,
+        // suffix[c] the ways for components from c on,
+        // both by total number of mines
+        double[][] prefix = new double[n + 1][];
+        double[][] suffix = new double[n + 1][];
+        prefix[0] = new double[] {1};
+        suffix[n] = new double[] {1};
+        for(int c = 0; c < n; c++) {
+            prefix[c + 1] = convolve(prefix[c], solutions.get(c).ways);
+        }
+        for(int c = n - 1; c >= 0; c--) {
+            suffix[c] = convolve(solutions.get(c).ways, suffix[c + 1]);
+        }
+        double[] weights = otherWeights(numOthers, remainingMines,
+                                        prefix[n].length);
+
+        // The total weight, and the expected
+        // number of mines outside the components
+        double total = 0;
+        double otherMines = 0;
+        for(int k = 0; k < prefix[n].length; k++) {
+            total += prefix[n][k] * weights[k];
+            otherMines += prefix[n][k] * weights[k] * (remainingMines - k);
+        }
+        if(total == 0) {
+            for(int i = 0; i < unknown.length; i++) {
+                if(unknown[i]) {
+                    probabilities[i] = Double.NaN;
+                }
+            }
+            return;
+        }
+
+        for(int c = 0; c < n; c++) {
+            Solution solution = solutions.get(c);
+            // The weight of each number of mines in this
+            // component: the ways to place the rest
+            double[] rest = convolve(prefix[c], suffix[c + 1]);
+            double[] weight = new double[solution.ways.length];
+            for(int k = 0; k < weight.length; k++) {
+                for(int r = 0; r < rest.length && k + r < weights.length; r++) {
+                    weight[k] += rest[r] * weights[k + r];
+                }
+            }
+            solution.findProbabilities(weight, probabilities);
+        }
+        double other = numOthers == 0 ? 0 : otherMines / total / numOthers;
+        boolean[] inComponent = new boolean[unknown.length];
+        for(Component component : components) {
+            for(int cell : component.cells) {
+                inComponent[cell] = true;
+            }
+        }
+        for(int i = 0; i < unknown.length; i++) {
+            if(unknown[i] && !inComponent[i]) {
+                probabilities[i] = other;
+            }
+        }
+    }
+
+    /**
+     * Returns, for each number of mines k in the
+     * components, the number of ways to place the
+     * other remaining mines among the spots outside
+     * them, scaled so the largest is 1.
+     *
+     * @param numOthers The number of spots
+     *                  outside the components
+     * @param remainingMines The number of mines
+     *                       that aren't revealed
+     * @param length One more than the most mines
+     *               the components can hold
+     *
+     * @return the scaled number of ways for each k
+     */
+    private static double[] otherWeights(int numOthers, int remainingMines,
+                                         int length) {
+        // Work with logarithms, as the binomials
+        // overflow a double on large boards
+        double[] logFactorial = new double[numOthers + 1];
+        for(int i = 1; i <= numOthers; i++) {
+            logFactorial[i] = logFactorial[i - 1] + Math.log(i);
+        }
+        double[] logWeights = new double[length];
+        double max = Double.NEGATIVE_INFINITY;
+        for(int k = 0; k < length; k++) {
+            int others = remainingMines - k;
+            if(others < 0 || others > numOthers) {
+                logWeights[k] = Double.NEGATIVE_INFINITY;
+            } else {
+                logWeights[k] = logFactorial[numOthers]
+                              - logFactorial[others]
+                              - logFactorial[numOthers - others];
+            }
+            max = Math.max(max, logWeights[k]);
+        }
+        double[] weights = new double[length];
+        if(max == Double.NEGATIVE_INFINITY) {
+            return weights;
+        }
+        for(int k = 0; k < length; k++) {
+            weights[k] = Math.exp(logWeights[k] - max);
+        }
+        return weights;
+    }
+
+    /**
+     * Returns the convolution of the given
+     * counts, indexed by number of mines.
+     *
+     * @param a The first counts
+     * @param b The second counts
+     *
+     * @return the convolution of a and b
+     */
+    private static double[] convolve(double[] a, double[] b) {
+        double[] result = new double[a.length + b.length - 1];
+        for(int i = 0; i < a.length; i++) {
+            if(a[i] == 0) continue;
+            for(int j = 0; j < b.length; j++) {
+                result[i + j] += a[i] * b[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the root of the
+     * union-find set holding i.
+     *
+     * @param parent The union-find parents
+     * @param i The spot
+     *
+     * @return the root of i's set
+     */
+    private static int find(int[] parent, int i) {
+        while(parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Joins the union-find sets
+     * holding a and b.
+     *
+     * @param parent The union-find parents
+     * @param a The first spot
+     * @param b The second spot
+     */
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if(rootA != rootB) {
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    /**
+     * Returns an order to visit the spots in:
+     * breadth first from a spot at one end of
+     * the component, so that spots sharing a
+     * constraint are close together and few
+     * constraints are open at once.
+     *
+     * @param neighbours The spots sharing
+     *                   a constraint with each
+     *
+     * @return the positions of the spots, in order
+     */
+    private static int[] sweepOrder(CellList[] neighbours) {
+        // The last spot reached from any
+        // spot is at an end of the component
+        int[] order = breadthFirst(neighbours, 0);
+        return breadthFirst(neighbours, order[order.length - 1]);
+    }
+
+    /**
+     * Returns the spots in the order a breadth
+     * first search from the given one reaches
+     * them. Every spot is reached, as a
+     * component's spots are connected.
+     *
+     * @param neighbours The spots sharing
+     *                   a constraint with each
+     * @param start The spot to start from
+     *
+     * @return the positions of the spots, in order
+     */
+    private static int[] breadthFirst(CellList[] neighbours, int start) {
+        int[] order = new int[neighbours.length];
+        boolean[] seen = new boolean[neighbours.length];
+        order[0] = start;
+        seen[start] = true;
+        int tail = 1;
+        for(int head = 0; head < tail; head++) {
+            CellList next = neighbours[order[head]];
+            for(int i = 0; i < next.size(); i++) {
+                int spot = next.get(i);
+                if(!seen[spot]) {
+                    seen[spot] = true;
+                    order[tail++] = spot;
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * A set of unknown spots, and the
+     * revealed numbers that constrain them.
+     * Two components are equal iff they have
+     * the same spots and the same constraints.
+     */
+    private static class Component {
+        private int[] cells;
+        // For each constraint, its value then the
+        // positions of its spots in cells
+        private int[][] constraints;
+        private int hash;
+
+        /**
+         * Creates a Component from the given
+         * constraints, each its value followed
+         * by the board indices of its spots.
+         *
+         * @param group The constraints
+         */
+        public Component(List<int[]> group) {
+            SortedSet<Integer> spots = new TreeSet<Integer>();
+            for(int[] constraint : group) {
+                for(int c = 1; c < constraint.length; c++) {
+                    spots.add(constraint[c]);
+                }
+            }
+            cells = new int[spots.size()];
+            int n = 0;
+            for(int spot : spots) {
+                cells[n++] = spot;
+            }
+            constraints = new int[group.size()][];
+            for(int g = 0; g < group.size(); g++) {
+                int[] constraint = group.get(g).clone();
+                for(int c = 1; c < constraint.length; c++) {
+                    constraint[c] = Arrays.binarySearch(cells, constraint[c]);
+                }
+                constraints[g] = constraint;
+            }
+            hash = Arrays.hashCode(cells) * 31 + Arrays.deepHashCode(constraints);
+        }
+
+        /**
+         * Returns true iff o is a Component with
+         * the same spots and constraints.
+         *
+         * @param o The object to compare with
+         *
+         * @return true iff o is equal to this
+         */
+        public boolean equals(Object o) {
+            if(!(o instanceof Component)) {
+                return false;
+            }
+            Component other = (Component)o;
+            return hash == other.hash
+                && Arrays.equals(cells, other.cells)
+                && Arrays.deepEquals(constraints, other.constraints);
+        }
+
+        /**
+         * Returns a hash of the spots
+         * and constraints.
+         *
+         * @return the hash code
+         */
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The solutions of a component, counted by
+     * number of mines. They are counted by a
+     * sweep over the component's spots, in an
+     * order that keeps few constraints open at
+     * once. Partial solutions that have placed
+     * the same mines in every open constraint
+     * can be finished in the same ways, so they
+     * are merged, and the work grows with the
+     * number of such states rather than the
+     * number of solutions. A sweep back then
+     * finds, for each spot and number of mines,
+     * the share of solutions with a mine there,
+     * so a cached component's probabilities
+     * only need its new weights.
+     */
+    private class Solution {
+        // Counts past this are scaled down, as they
+        // overflow a double on large components.
+        // Only their ratios matter.
+        private static final double MAX_WAYS = 1e100;
+
+        private int[] cells;
+        // The position in cells of the spot
+        // decided at each step of the sweep
+        private int[] order;
+        // For each step, the constraints on its spot:
+        // the slot holding the mines each has placed,
+        // its value, and how many of its spots are
+        // still undecided after the step
+        private int[][] slots;
+        private int[][] values;
+        private int[][] remaining;
+        // The number of longs holding the
+        // slots, four bits to a slot
+        private int numWords;
+        // ways[k] is the number of solutions with
+        // k mines, scaled so the largest is 1
+        private double[] ways;
+        // shares[i][k] is the share of the solutions
+        // with lowest + k mines that have a mine at
+        // cells[i]. Only that range of k has solutions.
+        private int lowest;
+        private double[][] shares;
+
+        /**
+         * Creates the Solution of a component.
+         *
+         * @param cells The component's spots
+         * @param constraints Its constraints, each
+         *                    its value then the
+         *                    positions of its spots
+         */
+        public Solution(int[] cells, int[][] constraints) {
+            this.cells = cells;
+            int n = cells.length;
+            // The constraints on each spot, and the
+            // spots sharing a constraint with each
+            CellList[] on = new CellList[n];
+            CellList[] neighbours = new CellList[n];
+            for(int i = 0; i < n; i++) {
+                on[i] = new CellList(8);
+                neighbours[i] = new CellList(8);
+            }
+            for(int j = 0; j < constraints.length; j++) {
+                int[] constraint = constraints[j];
+                for(int c = 1; c < constraint.length; c++) {
+                    on[constraint[c]].add(j);
+                    for(int d = 1; d < constraint.length; d++) {
+                        if(d != c) {
+                            neighbours[constraint[c]].add(constraint[d]);
+                        }
+                    }
+                }
+            }
+            order = sweepOrder(neighbours);
+            int[] step = new int[n];
+            for(int t = 0; t < n; t++) {
+                step[order[t]] = t;
+            }
+
+            // Each constraint holds a slot from its
+            // first spot to its last, then frees it
+            CellList[] opening = new CellList[n];
+            CellList[] closing = new CellList[n];
+            for(int t = 0; t < n; t++) {
+                opening[t] = new CellList();
+                closing[t] = new CellList();
+            }
+            for(int j = 0; j < constraints.length; j++) {
+                int first = n;
+                int last = -1;
+                for(int c = 1; c < constraints[j].length; c++) {
+                    first = Math.min(first, step[constraints[j][c]]);
+                    last = Math.max(last, step[constraints[j][c]]);
+                }
+                opening[first].add(j);
+                closing[last].add(j);
+            }
+            int[] slotOf = new int[constraints.length];
+            int[] free = new int[constraints.length];
+            int numFree = 0;
+            int numSlots = 0;
+            for(int t = 0; t < n; t++) {
+                for(int c = 0; c < opening[t].size(); c++) {
+                    slotOf[opening[t].get(c)] =
+                        numFree > 0 ? free[--numFree] : numSlots++;
+                }
+                for(int c = 0; c < closing[t].size(); c++) {
+                    free[numFree++] = slotOf[closing[t].get(c)];
+                }
+            }
+            numWords = Math.max(1, (numSlots + 15) >>> 4);
+
+            slots = new int[n][];
+            values = new int[n][];
+            remaining = new int[n][];
+            for(int t = 0; t < n; t++) {
+                CellList js = on[order[t]];
+                slots[t] = new int[js.size()];
+                values[t] = new int[js.size()];
+                remaining[t] = new int[js.size()];
+                for(int c = 0; c < js.size(); c++) {
+                    int[] constraint = constraints[js.get(c)];
+                    slots[t][c] = slotOf[js.get(c)];
+                    values[t][c] = constraint[0];
+                    for(int d = 1; d < constraint.length; d++) {
+                        if(step[constraint[d]] > t) {
+                            remaining[t][c]++;
+                        }
+                    }
+                }
+            }
+
+            // Every constraint is closed after the last
+            // step, so every solution ends in one state
+            List<Map<State, Counts>> levels =
+                new ArrayList<Map<State, Counts>>(n + 1);
+            Counts counts = forward(levels).get(new State(new long[numWords]));
+            ways = new double[n + 1];
+            shares = new double[n][0];
+            if(counts == null) {
+                return;
+            }
+            double max = 0;
+            for(int i = 0; i < counts.ways.length; i++) {
+                max = Math.max(max, counts.ways[i]);
+            }
+            for(int i = 0; i < counts.ways.length && max > 0; i++) {
+                ways[counts.min + i] = counts.ways[i] / max;
+            }
+            lowest = counts.min;
+            backward(levels, counts.ways.length);
+        }
+
+        /**
+         * Sweeps back over the spots, carrying the
+         * ways to finish from each state by the
+         * number of mines still to place, and
+         * fills in the shares. Joining these with
+         * the forward counts through each step
+         * counts every solution once, split by
+         * whether it has a mine at the step's spot.
+         *
+         * @param levels The forward counts before
+         *               each step and after the last
+         * @param width The number of mine counts
+         *              that have solutions
+         */
+        private void backward(List<Map<State, Counts>> levels, int width) {
+            swept++;
+            int n = order.length;
+            Map<State, Counts> after = new HashMap<State, Counts>();
+            after.put(new State(new long[numWords]),
+                      new Counts(0, new double[] {1}));
+            for(int t = n - 1; t >= 0; t--) {
+                Map<State, Counts> before = new HashMap<State, Counts>();
+                // The solutions through this step by
+                // number of mines, and those of them
+                // with a mine at its spot. Every level's
+                // counts are scaled alike, so only their
+                // ratio is kept.
+                double[] all = new double[width];
+                double[] mines = new double[width];
+                for(Map.Entry<State, Counts> entry : levels.get(t).entrySet()) {
+                    Counts counts = entry.getValue();
+                    Counts finish = new Counts(0, new double[0]);
+                    for(int v = 0; v <= 1; v++) {
+                        long[] words = advance(entry.getKey().words, t, v);
+                        if(words == null) continue;
+                        Counts next = after.get(new State(words));
+                        if(next == null) continue;
+                        finish.add(next, v);
+                        int base = counts.min + v + next.min - lowest;
+                        for(int i = 0; i < counts.ways.length; i++) {
+                            if(counts.ways[i] == 0) continue;
+                            for(int j = 0; j < next.ways.length; j++) {
+                                double ways = counts.ways[i] * next.ways[j];
+                                all[base + i + j] += ways;
+                                if(v == 1) {
+                                    mines[base + i + j] += ways;
+                                }
+                            }
+                        }
+                    }
+                    if(finish.ways.length > 0) {
+                        before.put(entry.getKey(), finish);
+                    }
+                }
+                double[] share = new double[width];
+                for(int k = 0; k < width; k++) {
+                    if(all[k] > 0) {
+                        share[k] = mines[k] / all[k];
+                    }
+                }
+                shares[order[t]] = share;
+                scale(before.values());
+                after = before;
+            }
+        }
+
+        /**
+         * Sets the probability that each of the
+         * component's spots is a mine, given the
+         * weight of each number of mines in it:
+         * the ways to place the other mines
+         * elsewhere. A spot's probability is its
+         * share of the solutions with each number
+         * of mines, weighted by how many of them
+         * there are and by that weight. No sweep
+         * is needed, so this is cheap for a
+         * cached component.
+         *
+         * @param weight The weight of each number
+         *               of mines, indexed like ways
+         * @param probabilities The array to fill in,
+         *                      by board index
+         */
+        public void findProbabilities(double[] weight, double[] probabilities) {
+            int width = cells.length == 0 ? 0 : shares[0].length;
+            double[] weighted = new double[width];
+            double total = 0;
+            for(int k = 0; k < width; k++) {
+                weighted[k] = weight[lowest + k] * ways[lowest + k];
+                total += weighted[k];
+            }
+            if(total == 0) {
+                return;
+            }
+            for(int i = 0; i < cells.length; i++) {
+                double sum = 0;
+                for(int k = 0; k < width; k++) {
+                    sum += weighted[k] * shares[i][k];
+                }
+                probabilities[cells[i]] = sum / total;
+            }
+        }
+
+        /**
+         * Sweeps forward over the spots, counting
+         * the partial solutions that reach each
+         * state by their number of mines.
+         *
+         * @param levels The list to add the counts
+         *               before each step and after
+         *               the last to
+         *
+         * @return the counts after the last step
+         */
+        private Map<State, Counts> forward(List<Map<State, Counts>> levels) {
+            swept++;
+            Map<State, Counts> level = new HashMap<State, Counts>();
+            level.put(new State(new long[numWords]),
+                      new Counts(0, new double[] {1}));
+            for(int t = 0; t < order.length; t++) {
+                levels.add(level);
+                Map<State, Counts> next = new HashMap<State, Counts>();
+                for(Map.Entry<State, Counts> entry : level.entrySet()) {
+                    for(int v = 0; v <= 1; v++) {
+                        long[] words = advance(entry.getKey().words, t, v);
+                        if(words == null) continue;
+                        State state = new State(words);
+                        Counts counts = next.get(state);
+                        if(counts == null) {
+                            counts = new Counts(0, new double[0]);
+                            next.put(state, counts);
+                        }
+                        counts.add(entry.getValue(), v);
+                    }
+                }
+                scale(next.values());
+                level = next;
+            }
+            levels.add(level);
+            return level;
+        }
+
+        /**
+         * Scales the given counts down alike
+         * if any have grown past MAX_WAYS.
+         *
+         * @param level The counts of one level
+         */
+        private void scale(Collection<Counts> level) {
+            double max = 0;
+            for(Counts counts : level) {
+                for(int i = 0; i < counts.ways.length; i++) {
+                    max = Math.max(max, counts.ways[i]);
+                }
+            }
+            if(max > MAX_WAYS) {
+                for(Counts counts : level) {
+                    for(int i = 0; i < counts.ways.length; i++) {
+                        counts.ways[i] /= max;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Returns the state after deciding the
+         * spot of the given step, or null if
+         * that leaves a constraint with too many
+         * mines, or too few spots left to reach
+         * its value.
+         *
+         * @param words The state before the step
+         * @param t The step
+         * @param v 1 for a mine, 0 for none
+         *
+         * @return the state after the step, or null
+         */
+        private long[] advance(long[] words, int t, int v) {
+            long[] next = words.clone();
+            for(int c = 0; c < slots[t].length; c++) {
+                int word = slots[t][c] >>> 4;
+                int shift = (slots[t][c] & 15) << 2;
+                int mines = (int)((next[word] >>> shift) & 15) + v;
+                if(mines > values[t][c] || mines + remaining[t][c] < values[t][c]) {
+                    return null;
+                }
+                if(remaining[t][c] == 0) {
+                    // Satisfied, so free the slot
+                    mines = 0;
+                }
+                next[word] = (next[word] & ~(15L << shift)) | ((long)mines << shift);
+            }
+            return next;
+        }
+    }
+
+    /**
+     * The mines placed so far in each
+     * open constraint, four bits each.
+     */
+    private static class State {
+        private long[] words;
+        private int hash;
+
+        /**
+         * Creates a State of the given slots.
+         *
+         * @param words The slots, four bits each
+         */
+        public State(long[] words) {
+            this.words = words;
+            this.hash = Arrays.hashCode(words);
+        }
+
+        /**
+         * Returns true iff o is a State
+         * with the same slots.
+         *
+         * @param o The object to compare with
+         *
+         * @return true iff o is equal to this
+         */
+        public boolean equals(Object o) {
+            return o instanceof State
+                && Arrays.equals(words, ((State)o).words);
+        }
+
+        /**
+         * Returns a hash of the slots.
+         *
+         * @return the hash code
+         */
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Numbers of partial solutions,
+     * by their number of mines.
+     */
+    private static class Counts {
+        // ways[i] counts those with min + i mines
+        private int min;
+        private double[] ways;
+
+        /**
+         * Creates Counts of the given ways.
+         *
+         * @param min The number of mines
+         *            counted by ways[0]
+         * @param ways The counts
+         */
+        public Counts(int min, double[] ways) {
+            this.min = min;
+            this.ways = ways;
+        }
+
+        /**
+         * Adds the given counts, each
+         * with extra mines added.
+         *
+         * @param other The counts to add
+         * @param extra The mines to add to each
+         */
+        public void add(Counts other, int extra) {
+            int lo = other.min + extra;
+            int hi = lo + other.ways.length;
+            if(ways.length == 0) {
+                min = lo;
+                ways = new double[hi - lo];
+            } else if(lo < min || hi > min + ways.length) {
+                int newMin = Math.min(min, lo);
+                double[] grown =
+                    new double[Math.max(hi, min + ways.length) - newMin];
+                System.arraycopy(ways, 0, grown, min - newMin, ways.length);
+                min = newMin;
+                ways = grown;
+            }
+            for(int i = 0; i < other.ways.length; i++) {
+                ways[lo - min + i] += other.ways[i];
+            }
+        }
+    }
+}
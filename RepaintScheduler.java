@@ -0,0 +1,210 @@
+import java.awt.event.*;
+import java.util.BitSet;
+import javax.swing.*;
+public class RepaintScheduler implements MineModelListener {
+    // The shortest time between two
+    // updates of the view: about 60 a second
+    public static final int FRAME_MILLIS = 16;
+
+    private MineModelListener view;
+    private javax.swing.Timer timer;
+    // The changes since the last update, merged.
+    // Guarded by this, as they may come from
+    // any thread.
+    private MineModel source;
+    private boolean full;
+    private boolean hidden;
+    private boolean revealed;
+    private boolean minesChanged;
+    private CellList cells;
+    private BitSet pending;
+    // The state the game ended in, or null
+    private GameState over;
+
+    /**
+     * Creates a RepaintScheduler that passes
+     * changes on to the given view. Add it to
+     * a MineModel in place of the view.
+     * Changes are collected as they come, from
+     * any thread, and passed on at most once
+     * per frame, on the event dispatch thread,
+     * as a single change naming every spot
+     * that changed.
+     *
+     * @param view The view to update
+     */
+    public RepaintScheduler(MineModelListener view) {
+        this.view = view;
+        this.cells = new CellList();
+        this.pending = new BitSet();
+        this.timer = new javax.swing.Timer(FRAME_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                flush();
+            }
+        });
+        // Pass the first change on at once, and
+        // only hold back the ones that follow it
+        this.timer.setInitialDelay(0);
+        this.timer.setCoalesce(true);
+    }
+
+    /**
+     * Notes that every spot must be updated.
+     *
+     * @param model The model
+     */
+    public synchronized void boardReset(MineModel model) {
+        full = true;
+        // Every spot will be updated anyway
+        clearCells();
+        schedule(model);
+    }
+
+    /**
+     * Notes that the number of mines changed.
+     *
+     * @param model The model
+     */
+    public synchronized void numMinesChanged(MineModel model) {
+        minesChanged = true;
+        schedule(model);
+    }
+
+    /**
+     * Adds the spots revealed to those
+     * waiting for the next frame.
+     *
+     * @param model The model
+     * @param cells The spots that changed
+     */
+    public synchronized void cellsRevealed(MineModel model, CellList cells) {
+        revealed = true;
+        add(cells);
+        schedule(model);
+    }
+
+    /**
+     * Adds the spots hidden to those
+     * waiting for the next frame.
+     *
+     * @param model The model
+     * @param cells The spots hidden
+     */
+    public synchronized void cellsHidden(MineModel model, CellList cells) {
+        hidden = true;
+        add(cells);
+        schedule(model);
+    }
+
+    /**
+     * Adds the flags toggled to those
+     * waiting for the next frame.
+     *
+     * @param model The model
+     * @param cells The spots toggled
+     */
+    public synchronized void flagChanged(MineModel model, CellList cells) {
+        add(cells);
+        schedule(model);
+    }
+
+    /**
+     * Notes that the game ended, to pass on
+     * after the changes that ended it.
+     *
+     * @param model The model
+     * @param state The game's final state
+     */
+    public synchronized void gameOver(MineModel model, GameState state) {
+        over = state;
+        schedule(model);
+    }
+
+    /**
+     * Starts the timer that passes the
+     * changes on, if it isn't running.
+     *
+     * @param model The model that changed
+     */
+    private void schedule(MineModel model) {
+        source = model;
+        if(!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Adds the spots to the pending ones,
+     * skipping any already there.
+     *
+     * @param changed The spots that changed
+     */
+    private void add(CellList changed) {
+        if(full) {
+            return;
+        }
+        for(int i = 0; i < changed.size(); i++) {
+            int cell = changed.get(i);
+            if(!pending.get(cell)) {
+                pending.set(cell);
+                cells.add(cell);
+            }
+        }
+    }
+
+    /**
+     * Forgets the pending spots.
+     */
+    private void clearCells() {
+        for(int i = 0; i < cells.size(); i++) {
+            pending.clear(cells.get(i));
+        }
+        cells = new CellList();
+    }
+
+    /**
+     * Passes the pending changes on to the view
+     * as one, or stops the timer if there are
+     * none. Called on the event dispatch thread.
+     */
+    private void flush() {
+        MineModel model;
+        CellList changed;
+        boolean full, hidden, revealed, minesChanged;
+        GameState over;
+        synchronized(this) {
+            if(!this.full && !this.minesChanged
+            && cells.isEmpty() && this.over == null) {
+                timer.stop();
+                return;
+            }
+            model = source;
+            changed = cells;
+            full = this.full;
+            hidden = this.hidden;
+            revealed = this.revealed;
+            minesChanged = this.minesChanged;
+            over = this.over;
+            clearCells();
+            this.full = this.hidden = this.revealed = this.minesChanged = false;
+            this.over = null;
+        }
+        if(minesChanged) {
+            view.numMinesChanged(model);
+        }
+        if(full) {
+            view.boardReset(model);
+        } else if(!changed.isEmpty()) {
+            if(hidden) {
+                view.cellsHidden(model, changed);
+            } else if(revealed) {
+                view.cellsRevealed(model, changed);
+            } else {
+                view.flagChanged(model, changed);
+            }
+        }
+        if(over != null) {
+            view.gameOver(model, over);
+        }
+    }
+}
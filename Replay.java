@@ -0,0 +1,431 @@
+import java.awt.event.*;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import javax.swing.*;
+public class Replay {
+    // Moves between the snapshots kept for seeking
+    private static final int SNAPSHOT_INTERVAL = 256;
+
+    private ByteBuffer bytes;
+    // The offset of each move in the journal,
+    // with the journal's length at the end
+    private int[] offsets;
+    private Minesweeper board;
+    private int position;
+    // Copies of the board after the
+    // number of moves at their keys
+    private TreeMap<Integer, Minesweeper> snapshots;
+
+    /**
+     * Creates a Replay of the given journal,
+     * positioned before its first move.
+     *
+     * @param journal The journal to replay
+     *
+     * @throws IllegalArgumentException
+     *         if the journal doesn't start
+     *         with a new board
+     */
+    public Replay(Journal journal) {
+        bytes = journal.getBytes();
+        offsets = new int[journal.getNumMoves() + 1];
+        for(int move = 0; move < journal.getNumMoves(); move++) {
+            offsets[move] = bytes.position();
+            skip(bytes);
+        }
+        offsets[journal.getNumMoves()] = bytes.position();
+        if(journal.getNumMoves() > 0) {
+            int opcode = bytes.get(0);
+            if(opcode != Journal.RESET && opcode != Journal.LOAD) {
+                throw new IllegalArgumentException(
+                    "A journal must start with a new board.");
+            }
+        }
+        snapshots = new TreeMap<Integer, Minesweeper>();
+        position = 0;
+    }
+
+    /**
+     * The program's entry point.
+     * Plays back the journal file given as
+     * the first argument in a BoardView, with
+     * the delay between moves in milliseconds
+     * optionally given as the second.
+     *
+     * @param args The command-line arguments
+     *
+     * @throws IOException if the journal
+     *         can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        TileAtlas.preload();
+        Journal journal = Journal.load(new File(args[0]));
+        int delay = args.length > 1 ? Integer.parseInt(args[1]) : 250;
+        Replay replay = new Replay(journal);
+        replay.step();
+        MineModel model = new MineModel(replay.getBoard().copy());
+        JFrame frame = new JFrame("Minesweeper Replay");
+        BoardView view = new BoardView(model);
+        model.addListener(new RepaintScheduler(view));
+        frame.add(view);
+        frame.pack();
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        replay.play(model, delay);
+    }
+
+    /**
+     * Returns the number of moves in the journal.
+     *
+     * @return the number of moves
+     */
+    public int getNumMoves() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of moves
+     * replayed so far.
+     *
+     * @return the current position
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the board as it is after the moves
+     * replayed so far, or null before the first.
+     * It changes as the replay moves on.
+     *
+     * @return the current board
+     */
+    public Minesweeper getBoard() {
+        return board;
+    }
+
+    /**
+     * Replays the next move, if there is one.
+     *
+     * @return true iff a move was replayed
+     */
+    public boolean step() {
+        if(position == getNumMoves()) {
+            return false;
+        }
+        board = apply(board, position);
+        position++;
+        // Skip the snapshot if the next move
+        // replaces the board anyway
+        if(position % SNAPSHOT_INTERVAL == 0
+        && !snapshots.containsKey(position)
+        && !(position < getNumMoves() && isNewBoard(position))) {
+            snapshots.put(position, board.copy());
+        }
+        return true;
+    }
+
+    /**
+     * Returns true iff the given move starts
+     * a new board, so it doesn't depend on
+     * the moves before it.
+     *
+     * @param move The move
+     *
+     * @return true iff it is a RESET or LOAD
+     */
+    private boolean isNewBoard(int move) {
+        int opcode = bytes.get(offsets[move]);
+        return opcode == Journal.RESET || opcode == Journal.LOAD;
+    }
+
+    /**
+     * Moves the replay to just after the given
+     * number of moves, starting from the nearest
+     * snapshot or new board before it rather
+     * than from the start of the journal.
+     *
+     * @param move The number of moves to have replayed
+     *
+     * @throws IndexOutOfBoundsException
+     *         if move isn't a valid position
+     */
+    public void seek(int move) {
+        if(move < 0 || move > getNumMoves()) {
+            throw new IndexOutOfBoundsException(
+                "Move " + move + " out of range 0 to " + getNumMoves() + ".");
+        }
+        if(move < position) {
+            Map.Entry<Integer, Minesweeper> snapshot = snapshots.floorEntry(move);
+            position = 0;
+            board = null;
+            if(snapshot != null) {
+                position = snapshot.getKey();
+                board = snapshot.getValue().copy();
+            }
+        }
+        // A new board doesn't depend on the moves
+        // before it, so start from the last one
+        for(int m = move - 1; m > position; m--) {
+            if(isNewBoard(m)) {
+                position = m;
+                break;
+            }
+        }
+        while(position < move) {
+            step();
+        }
+    }
+
+    /**
+     * Plays the rest of the journal through the
+     * given model, one move every delay
+     * milliseconds, so its views show the game.
+     * Delays shorter than a frame play several
+     * moves a frame, as a single batch.
+     *
+     * @param model The model to play through
+     * @param delay The delay between moves
+     *              in milliseconds
+     *
+     * @return the timer playing the moves,
+     *         which stops itself at the end
+     */
+    public javax.swing.Timer play(final MineModel model, int delay) {
+        final int perTick = delay >= RepaintScheduler.FRAME_MILLIS
+            ? 1
+            : RepaintScheduler.FRAME_MILLIS / Math.max(1, delay);
+        final javax.swing.Timer timer = new javax.swing.Timer(
+            Math.max(delay, RepaintScheduler.FRAME_MILLIS), null);
+        timer.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if(position == getNumMoves()) {
+                    timer.stop();
+                    return;
+                }
+                advance(model, perTick);
+            }
+        });
+        timer.start();
+        return timer;
+    }
+
+    /**
+     * Replays up to the given number of moves
+     * through the given model. Runs of reveals,
+     * flags and chords are applied as one batch,
+     * so the views update once for each run.
+     *
+     * @param model The model to play through
+     * @param count The number of moves
+     */
+    public void advance(MineModel model, int count) {
+        MineModel.Batch batch = new MineModel.Batch();
+        for(int i = 0; i < count && position < getNumMoves(); i++) {
+            if(!addTo(batch, model.getSize(), position)) {
+                model.apply(batch);
+                batch = new MineModel.Batch();
+                apply(model, position);
+            }
+            step();
+        }
+        model.apply(batch);
+    }
+
+    /**
+     * Applies the given move to the given board.
+     *
+     * @param board The board, or null before
+     *              the first move
+     * @param move The move
+     *
+     * @return the board after the move, which
+     *         is a new one for a new board
+     */
+    private Minesweeper apply(Minesweeper board, int move) {
+        ByteBuffer buffer = moveBuffer(move);
+        int opcode = buffer.get();
+        switch(opcode) {
+        case Journal.RESET:
+            int size = Journal.readVarInt(buffer);
+            int numMines = Journal.readVarInt(buffer);
+            int firstClick = Journal.readVarInt(buffer);
+            long seed = Journal.readLong(buffer);
+            board = new Minesweeper(size, numMines, seed);
+            board.setFirstClick(Minesweeper.FirstClick.values()[firstClick]);
+            return board;
+        case Journal.LOAD:
+            return readLoad(buffer);
+        case Journal.REVEAL:
+            int cell = Journal.readVarInt(buffer);
+            board.reveal(cell % board.getSize(), cell / board.getSize());
+            return board;
+        case Journal.FLAG:
+            cell = Journal.readVarInt(buffer);
+            board.toggleFlag(cell % board.getSize(), cell / board.getSize());
+            return board;
+        case Journal.CHORD:
+            cell = Journal.readVarInt(buffer);
+            board.chord(cell % board.getSize(), cell / board.getSize());
+            return board;
+        case Journal.REVEAL_MINES:
+            board.revealMines();
+            return board;
+        case Journal.UNDO:
+            board.undo();
+            return board;
+        case Journal.REDO:
+            board.redo();
+            return board;
+        case Journal.FIRST_CLICK:
+            board.setFirstClick(
+                Minesweeper.FirstClick.values()[Journal.readVarInt(buffer)]);
+            return board;
+        default:
+            throw new IllegalStateException("Unknown opcode " + opcode + ".");
+        }
+    }
+
+    /**
+     * Applies the given move through the
+     * given model, so its views update.
+     *
+     * @param model The model
+     * @param move The move
+     */
+    private void apply(MineModel model, int move) {
+        ByteBuffer buffer = moveBuffer(move);
+        int opcode = buffer.get();
+        switch(opcode) {
+        case Journal.REVEAL:
+            int cell = Journal.readVarInt(buffer);
+            model.reveal(cell % model.getSize(), cell / model.getSize());
+            break;
+        case Journal.FLAG:
+            cell = Journal.readVarInt(buffer);
+            model.toggleFlag(cell % model.getSize(), cell / model.getSize());
+            break;
+        case Journal.CHORD:
+            cell = Journal.readVarInt(buffer);
+            model.chord(cell % model.getSize(), cell / model.getSize());
+            break;
+        case Journal.REVEAL_MINES:
+            model.revealMines();
+            break;
+        case Journal.UNDO:
+            model.undo();
+            break;
+        case Journal.REDO:
+            model.redo();
+            break;
+        case Journal.FIRST_CLICK:
+            model.setFirstClick(
+                Minesweeper.FirstClick.values()[Journal.readVarInt(buffer)]);
+            break;
+        default:
+            // A new board
+            model.start(apply((Minesweeper)null, move));
+        }
+    }
+
+    /**
+     * Adds the given move to a batch,
+     * if it is one a batch can hold.
+     *
+     * @param batch The batch
+     * @param size The size of the board
+     * @param move The move
+     *
+     * @return true iff the move was added
+     */
+    private boolean addTo(MineModel.Batch batch, int size, int move) {
+        ByteBuffer buffer = moveBuffer(move);
+        int opcode = buffer.get();
+        if(opcode != Journal.REVEAL
+        && opcode != Journal.FLAG
+        && opcode != Journal.CHORD) {
+            return false;
+        }
+        int cell = Journal.readVarInt(buffer);
+        int x = cell % size;
+        int y = cell / size;
+        if(opcode == Journal.REVEAL) {
+            batch.reveal(x, y);
+        } else if(opcode == Journal.FLAG) {
+            batch.toggleFlag(x, y);
+        } else {
+            batch.chord(x, y);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a buffer positioned at
+     * the start of the given move.
+     *
+     * @param move The move
+     *
+     * @return the move's bytes
+     */
+    private ByteBuffer moveBuffer(int move) {
+        ByteBuffer buffer = bytes.duplicate();
+        buffer.limit(offsets[move + 1]);
+        buffer.position(offsets[move]);
+        return buffer;
+    }
+
+    /**
+     * Reads the saved game of a LOAD move.
+     *
+     * @param buffer The buffer, after the opcode
+     *
+     * @return the saved game
+     */
+    private static Minesweeper readLoad(ByteBuffer buffer) {
+        int length = Journal.readVarInt(buffer);
+        ByteBuffer game = buffer.slice();
+        game.limit(length);
+        try {
+            return Minesweeper.load(game);
+        } catch(IOException e) {
+            throw new IllegalStateException(
+                "Corrupt game in journal: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Moves the buffer past the move
+     * at its position.
+     *
+     * @param buffer The buffer
+     */
+    private static void skip(ByteBuffer buffer) {
+        int opcode = buffer.get();
+        switch(opcode) {
+        case Journal.RESET:
+            Journal.readVarInt(buffer);
+            Journal.readVarInt(buffer);
+            Journal.readVarInt(buffer);
+            Journal.readLong(buffer);
+            break;
+        case Journal.LOAD:
+            int length = Journal.readVarInt(buffer);
+            buffer.position(buffer.position() + length);
+            break;
+        case Journal.REVEAL:
+        case Journal.FLAG:
+        case Journal.CHORD:
+        case Journal.FIRST_CLICK:
+            Journal.readVarInt(buffer);
+            break;
+        case Journal.REVEAL_MINES:
+        case Journal.UNDO:
+        case Journal.REDO:
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown opcode " + opcode + ".");
+        }
+    }
+}
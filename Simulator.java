@@ -0,0 +1,165 @@
+import java.util.concurrent.*;
+public class Simulator {
+    // The mine counts of ControlPanel's difficulties
+    private static final int[] PRESETS = {10, 15, 20};
+    // Games per fork-join leaf task
+    private static final int LEAF_GAMES = 256;
+
+    /**
+     * The program's entry point.
+     * Plays games with the Solver on every core
+     * and prints the win rate and throughput for
+     * each of ControlPanel's difficulties.
+     * Optionally takes the number of games per
+     * difficulty, the board size and the seed
+     * as arguments.
+     *
+     * @param args The command-line arguments
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 0L;
+        ForkJoinPool pool = new ForkJoinPool(
+            Runtime.getRuntime().availableProcessors());
+        System.out.println("Playing " + games + " games per difficulty on "
+            + pool.getParallelism() + " threads");
+        for(int numMines : PRESETS) {
+            long start = System.nanoTime();
+            Result result = simulate(pool, size, numMines, seed, games);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf(
+                "%dx%d, %d mines: %5.1f%% won, %.2f guesses/game, %.0f games/s%n",
+                size, size, numMines,
+                100.0 * result.won / result.played,
+                (double)result.guesses / result.played,
+                result.played / seconds);
+        }
+    }
+
+    /**
+     * Plays the given number of games in the
+     * given pool. Game i is played on the board
+     * with seed (seed + i), so the result is the
+     * same however the games are scheduled.
+     *
+     * @param pool The pool to play the games in
+     * @param size The size (edge length) of the boards
+     * @param numMines The number of mines on each board
+     * @param seed The seed of the first game
+     * @param games The number of games to play
+     *
+     * @return the combined result of the games
+     */
+    public static Result simulate(ForkJoinPool pool, int size, int numMines,
+                                  long seed, int games) {
+        return pool.invoke(new Games(size, numMines, seed, 0, games));
+    }
+
+    /**
+     * The combined result of a number of games.
+     */
+    public static class Result {
+        private int played;
+        private int won;
+        private long guesses;
+
+        /**
+         * Returns the number of games played.
+         *
+         * @return the number of games played
+         */
+        public int getPlayed() {
+            return played;
+        }
+
+        /**
+         * Returns the number of games won.
+         *
+         * @return the number of games won
+         */
+        public int getWon() {
+            return won;
+        }
+
+        /**
+         * Returns the total number of
+         * guesses made across the games.
+         *
+         * @return the total number of guesses
+         */
+        public long getGuesses() {
+            return guesses;
+        }
+    }
+
+    /**
+     * Plays a range of games, splitting
+     * it in half until it is small enough
+     * to play on one thread.
+     */
+    private static class Games extends RecursiveTask<Result> {
+        // Each worker thread reuses its own board
+        private static final ThreadLocal<Minesweeper> BOARDS =
+            new ThreadLocal<Minesweeper>();
+
+        private int size, numMines;
+        private long seed;
+        private int from, to;
+
+        /**
+         * Creates a task playing
+         * games from (inclusive) to to
+         * (exclusive).
+         *
+         * @param size The size of the boards
+         * @param numMines The number of mines
+         * @param seed The seed of game 0
+         * @param from The first game
+         * @param to The game after the last
+         */
+        public Games(int size, int numMines, long seed, int from, int to) {
+            this.size = size;
+            this.numMines = numMines;
+            this.seed = seed;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Plays the games.
+         *
+         * @return the combined result
+         */
+        protected Result compute() {
+            if(to - from > LEAF_GAMES) {
+                int middle = (from + to) >>> 1;
+                Games left = new Games(size, numMines, seed, from, middle);
+                left.fork();
+                Result result = new Games(size, numMines, seed, middle, to).compute();
+                Result other = left.join();
+                result.played += other.played;
+                result.won += other.won;
+                result.guesses += other.guesses;
+                return result;
+            }
+            Minesweeper board = BOARDS.get();
+            if(board == null || board.getSize() != size) {
+                board = new Minesweeper(size, numMines, seed);
+                BOARDS.set(board);
+            }
+            board.setNumMines(numMines);
+            Result result = new Result();
+            for(int game = from; game < to; game++) {
+                board.reset(seed + game);
+                Solver solver = new Solver(board, seed + game);
+                if(solver.solve(size / 2, size / 2, true)) {
+                    result.won++;
+                }
+                result.guesses += solver.getGuesses();
+                result.played++;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+import java.util.Random;
+public class Solver {
+    private Minesweeper minesweeper;
+    private Random rgen;
+    private int guesses;
+    // The visible state of each spot, read in
+    // bulk before each scan of the whole board
+    private byte[] state;
+
+    /**
+     * Creates a Solver which plays the given
+     * Minesweeper. It only looks at what a
+     * player could see: which spots are revealed
+     * or flagged, and the numbers on revealed spots.
+     *
+     * @param minesweeper The game to play
+     * @param seed The seed for choosing guesses, so
+     *             the same board is always played
+     *             the same way
+     */
+    public Solver(Minesweeper minesweeper, long seed) {
+        this.minesweeper = minesweeper;
+        this.rgen = new Random(seed);
+    }
+
+    /**
+     * Plays the game from its current state,
+     * starting by revealing x,y, until it is
+     * won or lost, or until no spot can be
+     * deduced and guesses aren't allowed.
+     *
+     * @param x The x co-ord to start at
+     * @param y The y co-ord to start at
+     * @param allowGuesses True iff the solver may
+     *                     reveal a spot it can't
+     *                     prove is safe
+     *
+     * @return true iff the game was won
+     */
+    public boolean solve(int x, int y, boolean allowGuesses) {
+        guesses = 0;
+        int size = minesweeper.getSize();
+        CellList dirty = new CellList();
+        addWithNeighbours(dirty, minesweeper.reveal(x, y));
+        while(minesweeper.getState() == GameState.PLAYING) {
+            if(dirty.isEmpty()) {
+                dirty = deduceFromPairs();
+            }
+            if(dirty.isEmpty()) {
+                if(!allowGuesses) {
+                    return false;
+                }
+                dirty = guess();
+                guesses++;
+                continue;
+            }
+            CellList next = new CellList();
+            for(int i = 0; i < dirty.size(); i++) {
+                int cell = dirty.get(i);
+                deduce(cell % size, cell / size, next);
+            }
+            dirty = next;
+        }
+        return minesweeper.getState() == GameState.WON;
+    }
+
+    /**
+     * Returns the number of guesses the
+     * last call to solve had to make.
+     *
+     * @return the number of guesses made
+     */
+    public int getGuesses() {
+        return guesses;
+    }
+
+    /**
+     * Applies the single-spot rules to x,y:
+     * if its flagged neighbours account for
+     * its number the rest are safe, and if its
+     * unknown neighbours are all needed to make
+     * up its number they are all mines.
+     * Spots whose neighbourhoods change are
+     * added to the given list.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     * @param changed The list to add to
+     */
+    private void deduce(int x, int y, CellList changed) {
+        if(!minesweeper.isRevealed(x, y)
+        || minesweeper.isMine(x, y)) {
+            return;
+        }
+        int size = minesweeper.getSize();
+        int unknown = 0;
+        int flagged = 0;
+        for(int i = x - 1; i <= x + 1; i++) {
+            for(int j = y - 1; j <= y + 1; j++) {
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                if(minesweeper.isRevealed(i, j)) continue;
+                if(minesweeper.isFlag(i, j)) {
+                    flagged++;
+                } else {
+                    unknown++;
+                }
+            }
+        }
+        if(unknown == 0) {
+            return;
+        }
+        int remaining = minesweeper.getNumAdjacentMines(x, y) - flagged;
+        if(remaining != 0 && remaining != unknown) {
+            return;
+        }
+        for(int i = x - 1; i <= x + 1; i++) {
+            for(int j = y - 1; j <= y + 1; j++) {
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                if(minesweeper.isRevealed(i, j)) continue;
+                if(minesweeper.isFlag(i, j)) continue;
+                if(remaining == 0) {
+                    addWithNeighbours(changed, minesweeper.reveal(i, j));
+                } else {
+                    minesweeper.toggleFlag(i, j);
+                    addNeighbours(changed, i + j*size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the subset rule to every pair
+     * of revealed numbers up to two spots
+     * apart: if one's unknown neighbours are
+     * a subset of the other's, the difference
+     * in their numbers is the number of mines
+     * among the other's remaining neighbours.
+     * Stops at the first pair that proves
+     * anything.
+     *
+     * @return the spots whose neighbourhoods
+     *         changed, or an empty list if
+     *         nothing could be deduced
+     */
+    private CellList deduceFromPairs() {
+        int size = minesweeper.getSize();
+        CellList changed = new CellList();
+        // Nothing changes until a pair proves
+        // something, and then the scan stops
+        readState();
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                if(!isFrontier(x, y)) continue;
+                for(int i = x - 2; i <= x + 2; i++) {
+                    for(int j = y - 2; j <= y + 2; j++) {
+                        if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                        if(i == x && j == y) continue;
+                        if(!isFrontier(i, j)) continue;
+                        if(deduceFromPair(x, y, i, j, changed)) {
+                            return changed;
+                        }
+                    }
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Applies the subset rule to the
+     * numbers at ax,ay and bx,by.
+     *
+     * @param ax The x co-ord of the smaller number
+     * @param ay The y co-ord of the smaller number
+     * @param bx The x co-ord of the larger number
+     * @param by The y co-ord of the larger number
+     * @param changed The list to add changed spots to
+     *
+     * @return true iff anything was deduced
+     */
+    private boolean deduceFromPair(int ax, int ay, int bx, int by,
+                                   CellList changed) {
+        int size = minesweeper.getSize();
+        // Every unknown neighbour of a must
+        // also be a neighbour of b
+        for(int i = ax - 1; i <= ax + 1; i++) {
+            for(int j = ay - 1; j <= ay + 1; j++) {
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                if(!isUnknown(i, j)) continue;
+                if(Math.abs(i - bx) > 1 || Math.abs(j - by) > 1) {
+                    return false;
+                }
+            }
+        }
+        int extra = 0;
+        for(int i = bx - 1; i <= bx + 1; i++) {
+            for(int j = by - 1; j <= by + 1; j++) {
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                if(!isUnknown(i, j)) continue;
+                if(Math.abs(i - ax) > 1 || Math.abs(j - ay) > 1) {
+                    extra++;
+                }
+            }
+        }
+        if(extra == 0) {
+            return false;
+        }
+        int difference = remainingMines(bx, by) - remainingMines(ax, ay);
+        if(difference != 0 && difference != extra) {
+            return false;
+        }
+        for(int i = bx - 1; i <= bx + 1; i++) {
+            for(int j = by - 1; j <= by + 1; j++) {
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                if(!isUnknown(i, j)) continue;
+                if(Math.abs(i - ax) <= 1 && Math.abs(j - ay) <= 1) continue;
+                if(difference == 0) {
+                    addWithNeighbours(changed, minesweeper.reveal(i, j));
+                } else {
+                    minesweeper.toggleFlag(i, j);
+                    addNeighbours(changed, i + j*size);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reveals a random unknown spot.
+     *
+     * @return the spots whose neighbourhoods changed
+     */
+    private CellList guess() {
+        int size = minesweeper.getSize();
+        CellList unknown = new CellList();
+        readState();
+        for(int y = 0; y < size; y++) {
+            for(int x = 0; x < size; x++) {
+                if(isUnknown(x, y)) {
+                    unknown.add(x + y*size);
+                }
+            }
+        }
+        CellList changed = new CellList();
+        if(!unknown.isEmpty()) {
+            int cell = unknown.get(rgen.nextInt(unknown.size()));
+            addWithNeighbours(changed, minesweeper.reveal(cell % size, cell / size));
+        }
+        return changed;
+    }
+
+    /**
+     * Reads the visible state of every spot
+     * for isFrontier, isUnknown and
+     * remainingMines to look at.
+     */
+    private void readState() {
+        int size = minesweeper.getSize();
+        if(state == null || state.length != size * size) {
+            state = new byte[size * size];
+        }
+        minesweeper.exportState(state);
+    }
+
+    /**
+     * Returns true iff x,y is a revealed
+     * number with an unknown neighbour.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff x,y is on the frontier
+     */
+    private boolean isFrontier(int x, int y) {
+        int size = minesweeper.getSize();
+        if(state[x + y*size] >= Minesweeper.HIDDEN) {
+            return false;
+        }
+        for(int i = x - 1; i <= x + 1; i++) {
+            for(int j = y - 1; j <= y + 1; j++) {
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                if(isUnknown(i, j)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true iff x,y was neither
+     * revealed nor flagged when the
+     * state was last read.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return true iff x,y is unknown
+     */
+    private boolean isUnknown(int x, int y) {
+        return state[x + y*minesweeper.getSize()] == Minesweeper.HIDDEN;
+    }
+
+    /**
+     * Returns the number on x,y less the
+     * number of flags around it, when the
+     * state was last read.
+     *
+     * @param x The x co-ord
+     * @param y The y co-ord
+     *
+     * @return the number of unflagged
+     *         mines around x,y
+     */
+    private int remainingMines(int x, int y) {
+        int size = minesweeper.getSize();
+        int remaining = state[x + y*size];
+        for(int i = x - 1; i <= x + 1; i++) {
+            for(int j = y - 1; j <= y + 1; j++) {
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                if(state[i + j*size] == Minesweeper.FLAGGED) {
+                    remaining--;
+                }
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Adds each of the given spots and
+     * their neighbours to the given list.
+     *
+     * @param list The list to add to
+     * @param cells The spots to add
+     */
+    private void addWithNeighbours(CellList list, CellList cells) {
+        for(int i = 0; i < cells.size(); i++) {
+            list.add(cells.get(i));
+            addNeighbours(list, cells.get(i));
+        }
+    }
+
+    /**
+     * Adds the neighbours of the
+     * given spot to the given list.
+     *
+     * @param list The list to add to
+     * @param cell The spot's board index
+     */
+    private void addNeighbours(CellList list, int cell) {
+        int size = minesweeper.getSize();
+        int x = cell % size;
+        int y = cell / size;
+        for(int i = x - 1; i <= x + 1; i++) {
+            for(int j = y - 1; j <= y + 1; j++) {
+                if(i == x && j == y) continue;
+                if(i < 0 || j < 0 || i >= size || j >= size) continue;
+                list.add(i + j*size);
+            }
+        }
+    }
+}
@@ -19,23 +19,61 @@ public class SquareListener extends MouseAdapter {
 
     /**
      * Handles the mouse being pressed.
-     * If the square is revealed or mines
-     * have been revealed, does nothing.
+     *
+     * @param e The MouseEvent for the event
+     */
+    public void mousePressed(MouseEvent e) {
+        press(model, x, y, getButton(e));
+    }
+
+    /**
+     * Returns the button a press is taken as.
+     * Pressing the left and right buttons
+     * together is taken as a middle-click.
+     *
+     * @param e The MouseEvent for the press
+     *
+     * @return the button, as given by
+     *         MouseEvent.getButton
+     */
+    public static int getButton(MouseEvent e) {
+        int both = MouseEvent.BUTTON1_DOWN_MASK | MouseEvent.BUTTON3_DOWN_MASK;
+        if((e.getModifiersEx() & both) == both) {
+            return MouseEvent.BUTTON2;
+        }
+        return e.getButton();
+    }
+
+    /**
+     * Handles a mouse button being pressed
+     * over the x,y spot in the given model.
+     * If the game is over, does nothing.
+     * If it is a middle-mouse click,
+     * chords x,y. Otherwise, if the square
+     * is revealed, does nothing.
      * If it is a left-mouse click,
      * reveals x,y iff it isn't flagged.
      * If it is a right-mouse click,
      * toggles whether x,y is flagged.
      *
-     * @param e The MouseEvent for the event
+     * @param model The MineModel
+     * @param x The x co-ord
+     * @param y The y co-ord
+     * @param button The button that was pressed,
+     *               as given by MouseEvent.getButton
      */
-    public void mousePressed(MouseEvent e) {
-        if(!model.isRevealed(x, y)
-        && !model.hasRevealedMine()) {
-            if(e.getButton() == MouseEvent.BUTTON1) {
+    public static void press(MineModel model, int x, int y, int button) {
+        if(button == MouseEvent.BUTTON2) {
+            if(model.getState() == GameState.PLAYING) {
+                model.chord(x, y);
+            }
+        } else if(!model.isRevealed(x, y)
+        && model.getState() == GameState.PLAYING) {
+            if(button == MouseEvent.BUTTON1) {
                 if(!model.isFlag(x, y)) {
                     model.reveal(x, y);
                 }
-            } else if(e.getButton() == MouseEvent.BUTTON3) {
+            } else if(button == MouseEvent.BUTTON3) {
                 model.toggleFlag(x, y);
             }
         }
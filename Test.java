@@ -17,6 +17,32 @@ public class Test {
     private void test() {
         setUp();
         runTests();
+        testFloodFill();
+        testAdjacentCounts();
+        testGameState();
+        testSeededPlacement();
+        testBoardChanges();
+        testSolver();
+        testProbabilities();
+        testHintUpdater();
+        testBoardPool();
+        testFirstClick();
+        testSaveLoad();
+        testJournal();
+        testUndo();
+        testCopy();
+        testSeek();
+        testGameServer();
+        testConcurrentReveals();
+        testParallelFlood();
+        testRepaintScheduler();
+        testMetrics();
+        testChord();
+        testBatch();
+        testAsyncListener();
+        testExportState();
+        testExportWhilePlaying();
+        testLargeBoard();
     }
 
     private void setUp() {
@@ -72,6 +98,1329 @@ public class Test {
         }
     }
 
+    private void testFloodFill() {
+        // Large enough that a recursive flood
+        // would overflow the thread stack
+        Minesweeper m = new Minesweeper(2000, 0);
+        CellList opened = m.reveal(0, 0);
+        if(opened.size() != m.getSize() * m.getSize()) {
+            fail("Flood fill on an empty board opened "+opened.size()+" squares.");
+        }
+        if(!m.isRevealed(m.getSize() - 1, m.getSize() - 1)) {
+            fail("Flood fill on an empty board didn't reach the far corner.");
+        }
+        if(!m.reveal(5, 5).isEmpty()) {
+            fail("Revealing an already revealed square opened squares.");
+        }
+
+        m = new Minesweeper(30, 40);
+        for(int x = 0; x < m.getSize(); x++) {
+            for(int y = 0; y < m.getSize(); y++) {
+                if(!m.isMine(x, y) && !m.isRevealed(x, y)) {
+                    opened = m.reveal(x, y);
+                    for(int i = 0; i < opened.size(); i++) {
+                        int cell = opened.get(i);
+                        if(m.isMine(cell % m.getSize(), cell / m.getSize())) {
+                            fail("Flood fill opened a mine at index "+cell);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private void testAdjacentCounts() {
+        checkAdjacentCounts(new Minesweeper(37, 300));
+    }
+
+    private void checkAdjacentCounts(Minesweeper m) {
+        for(int x = 0; x < m.getSize(); x++) {
+            for(int y = 0; y < m.getSize(); y++) {
+                int expected = 0;
+                for(int i = x - 1; i <= x + 1; i++) {
+                    for(int j = y - 1; j <= y + 1; j++) {
+                        if(i == x && j == y) continue;
+                        if(i < 0 || j < 0) continue;
+                        if(i >= m.getSize() || j >= m.getSize()) continue;
+                        if(m.isMine(i, j)) {
+                            expected++;
+                        }
+                    }
+                }
+                if(m.getNumAdjacentMines(x, y) != expected) {
+                    fail("Adjacent mine count at "+x+","+y+" was "
+                        +m.getNumAdjacentMines(x, y)+", expected "+expected);
+                }
+            }
+        }
+    }
+
+    private void testGameState() {
+        Minesweeper m = new Minesweeper(12, 20);
+        if(m.getState() != GameState.PLAYING) {
+            fail("Newly created Minesweeper wasn't in play.");
+        }
+        for(int x = 0; x < m.getSize(); x++) {
+            for(int y = 0; y < m.getSize(); y++) {
+                if(!m.isMine(x, y)) {
+                    m.reveal(x, y);
+                }
+            }
+        }
+        if(m.getNumRevealed() != m.getSize() * m.getSize() - m.getNumMines()) {
+            fail("Revealed count was "+m.getNumRevealed()+" after revealing every safe square.");
+        }
+        if(m.getState() != GameState.WON || m.hasRevealedMine()) {
+            fail("Revealing every safe square didn't win the game.");
+        }
+
+        m.reset();
+        if(m.getState() != GameState.PLAYING || m.getNumRevealed() != 0) {
+            fail("Resetting didn't restart the game.");
+        }
+        m.toggleFlag(0, 0);
+        m.toggleFlag(1, 0);
+        m.toggleFlag(0, 0);
+        if(m.getNumFlags() != 1) {
+            fail("Flag count was "+m.getNumFlags()+" after placing two flags and removing one.");
+        }
+        m.revealMines();
+        if(m.getState() != GameState.LOST || !m.hasRevealedMine()) {
+            fail("Revealing the mines didn't lose the game.");
+        }
+    }
+
+    private void testSeededPlacement() {
+        // Sparse and dense boards take different
+        // placement paths, so check both
+        int[] mineCounts = {10, 350};
+        for(int numMines : mineCounts) {
+            Minesweeper a = new Minesweeper(20, numMines, 1234L);
+            Minesweeper b = new Minesweeper(20, numMines, 1234L);
+            a.reset();
+            b.reset();
+            b.reset(b.getSeed());
+            int placed = 0;
+            for(int x = 0; x < a.getSize(); x++) {
+                for(int y = 0; y < a.getSize(); y++) {
+                    if(a.isMine(x, y) != b.isMine(x, y)) {
+                        fail("Boards with the same seed differed at "+x+","+y);
+                    }
+                    if(a.isMine(x, y)) {
+                        placed++;
+                    }
+                }
+            }
+            if(placed != numMines) {
+                fail("Placed "+placed+" mines, expected "+numMines);
+            }
+        }
+    }
+
+    private void testBoardChanges() {
+        MineModel m = new MineModel(new Minesweeper(10, 0));
+        final List<String> changes = new ArrayList<String>();
+        final List<CellList> cells = new ArrayList<CellList>();
+        m.addListener(new MineModelAdapter() {
+            public void cellsRevealed(MineModel model, CellList changed) {
+                changes.add("revealed");
+                cells.add(changed);
+            }
+
+            public void flagChanged(MineModel model, CellList changed) {
+                changes.add("flag");
+                cells.add(changed);
+            }
+
+            public void gameOver(MineModel model, GameState state) {
+                changes.add(state.toString());
+                cells.add(null);
+            }
+        });
+        m.toggleFlag(3, 4);
+        if(!changes.equals(Arrays.asList("flag"))
+        || cells.get(0).size() != 1
+        || cells.get(0).get(0) != 3 + 4*10) {
+            fail("Toggling a flag didn't send a change naming just that square.");
+        }
+        m.toggleFlag(3, 4);
+        changes.clear();
+        cells.clear();
+        m.reveal(0, 0);
+        if(!changes.equals(Arrays.asList("revealed", GameState.WON.toString()))
+        || cells.get(0).size() != 100) {
+            fail("Flooding an empty board sent " + changes);
+        }
+        changes.clear();
+        m.reveal(0, 0);
+        if(!changes.isEmpty()) {
+            fail("Revealing an already revealed square sent a change.");
+        }
+        m.undo();
+        m.redo();
+        if(!changes.equals(Arrays.asList("revealed", GameState.WON.toString()))) {
+            fail("Winning again after an undo sent " + changes);
+        }
+    }
+
+    private void testSolver() {
+        Minesweeper m = new Minesweeper(10, 1, 7L);
+        for(int i = 0; i < 20; i++) {
+            m.reset();
+            int x = 0;
+            while(m.isMine(x, 0)) {
+                x++;
+            }
+            if(!new Solver(m, 7L).solve(x, 0, true)
+            && m.getState() != GameState.LOST) {
+                fail("Solver stopped without finishing a game with guesses allowed.");
+            }
+        }
+
+        java.util.concurrent.ForkJoinPool pool =
+            new java.util.concurrent.ForkJoinPool(4);
+        Simulator.Result a = Simulator.simulate(pool, 10, 15, 99L, 2000);
+        Simulator.Result b = Simulator.simulate(pool, 10, 15, 99L, 2000);
+        if(a.getPlayed() != 2000 || a.getWon() != b.getWon()
+        || a.getGuesses() != b.getGuesses()) {
+            fail("Simulating the same seeds twice gave different results.");
+        }
+        pool.shutdown();
+    }
+
+    private void testProbabilities() {
+        // Compare with counting every placement of
+        // the mines that matches the revealed numbers
+        for(long seed = 0; seed < 20; seed++) {
+            Minesweeper m = new Minesweeper(5, 5, seed);
+            MineModel model = new MineModel(m);
+            for(int x = 0; x < 5; x += 2) {
+                if(!m.isMine(x, 2)) {
+                    m.reveal(x, 2);
+                }
+            }
+            double[] expected = countPlacements(m);
+            double[] actual = model.getMineProbabilities();
+            for(int i = 0; i < 25; i++) {
+                if(Math.abs(expected[i] - actual[i]) > 1e-9) {
+                    fail("Mine probability at index "+i+" was "+actual[i]
+                        +", expected "+expected[i]+" (seed "+seed+")");
+                }
+            }
+            ProbabilityEngine engine = new ProbabilityEngine();
+            engine.compute(model);
+            int solved = engine.getNumSolved();
+            int swept = engine.getNumSwept();
+            model.toggleFlag(0, 0);
+            engine.compute(model);
+            if(engine.getNumSolved() != solved) {
+                fail("Recomputing after a flag toggle solved components again.");
+            }
+            if(engine.getNumSwept() != swept) {
+                fail("Recomputing after a flag toggle swept cached components.");
+            }
+        }
+
+        // Change one of several components: only
+        // it is swept, forward and back
+        Minesweeper m = new Minesweeper(20, 60, 7L);
+        MineModel model = new MineModel(m);
+        Random random = new Random(7);
+        for(int i = 0; i < 12; i++) {
+            int x = random.nextInt(20);
+            int y = random.nextInt(20);
+            if(!m.isMine(x, y)) {
+                m.reveal(x, y);
+            }
+        }
+        ProbabilityEngine engine = new ProbabilityEngine();
+        engine.compute(model);
+        for(int i = 0; i < 5; i++) {
+            int solved = engine.getNumSolved();
+            int swept = engine.getNumSwept();
+            int x = random.nextInt(20);
+            int y = random.nextInt(20);
+            if(m.isMine(x, y) || m.isRevealed(x, y)) continue;
+            m.reveal(x, y);
+            double[] actual = engine.compute(model);
+            if(engine.getNumSwept() - swept != 2 * (engine.getNumSolved() - solved)) {
+                fail("Recomputing after a reveal swept "
+                     + (engine.getNumSwept() - swept) + " times for "
+                     + (engine.getNumSolved() - solved) + " new components.");
+            }
+            double[] expected = new ProbabilityEngine().compute(model);
+            for(int c = 0; c < 400; c++) {
+                if(Double.compare(expected[c], actual[c]) != 0
+                && Math.abs(expected[c] - actual[c]) > 1e-12) {
+                    fail("Cached mine probability at index " + c + " was "
+                         + actual[c] + ", expected " + expected[c]);
+                }
+            }
+        }
+    }
+
+    private void testHintUpdater() {
+        final Minesweeper m = new Minesweeper(16, 40, 31L);
+        MineModel model = new MineModel(m);
+        for(int x = 0; x < 16; x += 3) {
+            if(!m.isMine(x, 8)) {
+                m.reveal(x, 8);
+            }
+        }
+        final double[] expected = model.getMineProbabilities();
+        final List<String> problems =
+            Collections.synchronizedList(new ArrayList<String>());
+        final java.util.concurrent.CountDownLatch published =
+            new java.util.concurrent.CountDownLatch(2);
+        final java.util.concurrent.atomic.AtomicInteger calls =
+            new java.util.concurrent.atomic.AtomicInteger();
+        final HintUpdater updater = new HintUpdater(model) {
+            protected void hintsChanged(double[] probabilities,
+                                        CellList frontier,
+                                        double other) {
+                if(!javax.swing.SwingUtilities.isEventDispatchThread()) {
+                    problems.add("hints passed on off the EDT");
+                }
+                if(!Arrays.equals(probabilities, expected)) {
+                    problems.add("probabilities differed from getMineProbabilities");
+                }
+                Set<Integer> own = new HashSet<Integer>();
+                for(int i = 0; i < frontier.size(); i++) {
+                    own.add(frontier.get(i));
+                }
+                for(int i = 0; i < 256; i++) {
+                    if(!own.contains(i) && !m.isRevealed(i % 16, i / 16)
+                    && Double.compare(probabilities[i], other) != 0) {
+                        problems.add("spot " + i + " away from the numbers"
+                                     + " didn't have the shared hint");
+                    }
+                }
+                calls.incrementAndGet();
+                published.countDown();
+            }
+        };
+        try {
+            // The second request waits for the
+            // first, and is then run after it
+            javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    updater.request();
+                    updater.request();
+                }
+            });
+            if(!published.await(10, java.util.concurrent.TimeUnit.SECONDS)) {
+                fail("HintUpdater passed on " + (2 - published.getCount())
+                     + " of 2 requests.");
+            }
+            javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    updater.request();
+                    updater.cancel();
+                }
+            });
+            Thread.sleep(200);
+            javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {}
+            });
+        } catch(Exception e) {
+            fail("Waiting for the HintUpdater threw " + e);
+            return;
+        }
+        if(calls.get() != 2) {
+            fail("HintUpdater passed on " + calls.get()
+                 + " requests, not 2, with the last cancelled.");
+        }
+        for(String problem : problems) {
+            fail("HintUpdater: " + problem + ".");
+        }
+    }
+
+    private double[] countPlacements(Minesweeper m) {
+        int n = m.getSize() * m.getSize();
+        double[] counts = new double[n];
+        double total = 0;
+        for(int placement = 0; placement < (1 << n); placement++) {
+            if(Integer.bitCount(placement) != m.getNumMines()) continue;
+            boolean matches = true;
+            for(int i = 0; i < n && matches; i++) {
+                int x = i % m.getSize();
+                int y = i / m.getSize();
+                if(!m.isRevealed(x, y)) continue;
+                int adjacent = 0;
+                for(int j = 0; j < n; j++) {
+                    if((placement & (1 << j)) != 0 && j != i
+                    && Math.abs(j % m.getSize() - x) <= 1
+                    && Math.abs(j / m.getSize() - y) <= 1) {
+                        adjacent++;
+                    }
+                }
+                matches = (placement & (1 << i)) == 0
+                       && adjacent == m.getNumAdjacentMines(x, y);
+            }
+            if(!matches) continue;
+            total++;
+            for(int j = 0; j < n; j++) {
+                if((placement & (1 << j)) != 0) {
+                    counts[j]++;
+                }
+            }
+        }
+        for(int j = 0; j < n; j++) {
+            counts[j] /= total;
+        }
+        return counts;
+    }
+
+    private void testBoardPool() {
+        BoardPool pool = new BoardPool(10, 2);
+        pool.prepare(10);
+        BoardPool.Board board = null;
+        for(int i = 0; i < 500 && board == null; i++) {
+            board = pool.take(10);
+            if(board == null) {
+                try {
+                    Thread.sleep(10);
+                } catch(InterruptedException e) {
+                    break;
+                }
+            }
+        }
+        pool.shutdown();
+        if(board == null) {
+            fail("BoardPool had no board ready after five seconds.");
+            return;
+        }
+        MineModel m = new MineModel(new Minesweeper(10, 15));
+        m.reset(board);
+        if(m.getNumMines() != 10 || !m.isRevealed(board.getStartX(), board.getStartY())) {
+            fail("Starting a pooled board didn't reveal its starting square.");
+        }
+        Minesweeper check = new Minesweeper(10, 10, board.getSeed());
+        if(!new Solver(check, 0L).solve(board.getStartX(), board.getStartY(), false)) {
+            fail("Pooled board with seed "+board.getSeed()+" needed a guess.");
+        }
+    }
+
+    private void testFirstClick() {
+        for(long seed = 0; seed < 50; seed++) {
+            Minesweeper m = new Minesweeper(10, 90, seed);
+            m.setFirstClick(Minesweeper.FirstClick.SAFE_OPENING);
+            m.reveal(0, 5);
+            if(m.getState() == GameState.LOST
+            || m.getNumAdjacentMines(0, 5) != 0) {
+                fail("Safe opening at 0,5 wasn't empty (seed "+seed+")");
+            }
+            checkAdjacentCounts(m);
+            int placed = 0;
+            for(int x = 0; x < m.getSize(); x++) {
+                for(int y = 0; y < m.getSize(); y++) {
+                    if(m.isMine(x, y)) {
+                        placed++;
+                    }
+                }
+            }
+            if(placed != 90) {
+                fail("Moving mines off the first click left "+placed+" mines.");
+            }
+        }
+        Minesweeper m = new Minesweeper(3, 9);
+        m.reveal(1, 1);
+        if(m.getState() != GameState.LOST) {
+            fail("First click on a board full of mines didn't lose.");
+        }
+    }
+
+    private void testSaveLoad() {
+        try {
+            java.io.File file = java.io.File.createTempFile("minesweeper", ".save");
+            file.deleteOnExit();
+            for(int started = 0; started <= 1; started++) {
+                Minesweeper m = new Minesweeper(23, 60, 5L);
+                m.toggleFlag(3, 3);
+                if(started == 1) {
+                    m.reveal(10, 10);
+                }
+                m.save(file);
+                Minesweeper loaded = Minesweeper.load(file);
+                for(int x = 0; x < m.getSize(); x++) {
+                    for(int y = 0; y < m.getSize(); y++) {
+                        if(m.isMine(x, y) != loaded.isMine(x, y)
+                        || m.isRevealed(x, y) != loaded.isRevealed(x, y)
+                        || m.isFlag(x, y) != loaded.isFlag(x, y)
+                        || m.getNumAdjacentMines(x, y) != loaded.getNumAdjacentMines(x, y)) {
+                            fail("Loaded game differed from the saved one at "+x+","+y);
+                        }
+                    }
+                }
+                if(loaded.getSeed() != m.getSeed()
+                || loaded.getNumRevealed() != m.getNumRevealed()
+                || loaded.getNumFlags() != m.getNumFlags()
+                || loaded.getState() != m.getState()) {
+                    fail("Loaded game's totals differed from the saved one.");
+                }
+                // A game saved before its first reveal
+                // must move the same mines when it starts
+                if(started == 0) {
+                    m.reveal(0, 0);
+                    loaded.reveal(0, 0);
+                    for(int x = 0; x < m.getSize(); x++) {
+                        for(int y = 0; y < m.getSize(); y++) {
+                            if(m.isMine(x, y) != loaded.isMine(x, y)) {
+                                fail("Loaded game moved different mines on its first reveal.");
+                            }
+                        }
+                    }
+                }
+            }
+            // A size too big for the board's int
+            // indices is corrupt, not an argument
+            Minesweeper small = new Minesweeper(4, 2, 5L);
+            java.nio.ByteBuffer buffer =
+                java.nio.ByteBuffer.allocate((int)small.getSaveLength());
+            small.save(buffer);
+            buffer.order(java.nio.ByteOrder.LITTLE_ENDIAN).putInt(8, 50000);
+            try {
+                Minesweeper.load(buffer);
+                fail("Loading a board too big to index didn't throw.");
+            } catch(java.io.IOException e) {
+                if(!e.getMessage().equals("Corrupt saved game.")) {
+                    fail("Loading a board too big to index threw " + e);
+                }
+            } catch(IllegalArgumentException e) {
+                fail("Loading a board too big to index threw " + e);
+            }
+            java.io.RandomAccessFile out = new java.io.RandomAccessFile(file, "rw");
+            out.writeInt(0);
+            out.close();
+            try {
+                Minesweeper.load(file);
+                fail("Loading a corrupt file didn't throw.");
+            } catch(java.io.IOException e) {
+                // Expected
+            }
+        } catch(java.io.IOException e) {
+            fail("Saving and loading threw " + e);
+        }
+    }
+
+    private void testJournal() {
+        MineModel model = new MineModel(new Minesweeper(16, 40, 9L));
+        Random random = new Random(9);
+        List<Integer> moves = new ArrayList<Integer>();
+        for(int i = 0; i < 600; i++) {
+            if(model.getState() != GameState.PLAYING) {
+                model.reset();
+            }
+            int x = random.nextInt(16);
+            int y = random.nextInt(16);
+            if(random.nextInt(4) == 0) {
+                model.toggleFlag(x, y);
+            } else if(!model.isFlag(x, y)) {
+                model.reveal(x, y);
+            }
+            if(random.nextInt(10) == 0) {
+                model.undo();
+            } else if(random.nextInt(20) == 0) {
+                model.redo();
+            }
+            if(i == 300) {
+                model.setFirstClick(Minesweeper.FirstClick.SAFE_OPENING);
+            }
+        }
+        Replay replay = new Replay(model.getJournal());
+        while(replay.step());
+        if(!sameBoard(model, replay.getBoard())) {
+            fail("Replayed game differed from the played one.");
+        }
+        replay.seek(0);
+        for(int i = 0; i < replay.getNumMoves() / 2; i++) {
+            replay.step();
+        }
+        Minesweeper middle = replay.getBoard().copy();
+        replay.seek(replay.getNumMoves());
+        replay.seek(replay.getNumMoves() / 2);
+        if(!sameBoard(new MineModel(middle), replay.getBoard())) {
+            fail("Seeking back gave a different game to stepping.");
+        }
+        int numMoves = model.getJournal().getNumMoves();
+        try {
+            model.reveal(-1, 0);
+            fail("Revealing off the board didn't throw.");
+        } catch(ArrayIndexOutOfBoundsException e) {
+            // Expected
+        }
+        try {
+            model.chord(0, -1);
+            fail("Chording off the board didn't throw.");
+        } catch(ArrayIndexOutOfBoundsException e) {
+            // Expected
+        }
+        if(model.getJournal().getNumMoves() != numMoves) {
+            fail("A move that threw was journaled.");
+        }
+        replay = new Replay(model.getJournal());
+        while(replay.step());
+        if(!sameBoard(model, replay.getBoard())) {
+            fail("Replaying after a move threw gave a different game.");
+        }
+        try {
+            java.io.File file = java.io.File.createTempFile("minesweeper", ".journal");
+            file.deleteOnExit();
+            model.getJournal().save(file);
+            Journal loaded = Journal.load(file);
+            if(loaded.getNumMoves() != model.getJournal().getNumMoves()
+            || !loaded.getBytes().equals(model.getJournal().getBytes())) {
+                fail("Loaded journal differed from the saved one.");
+            }
+        } catch(java.io.IOException e) {
+            fail("Saving and loading a journal threw " + e);
+        }
+    }
+
+    private void testCopy() {
+        Random random = new Random(21);
+        for(int n = 0; n < 50; n++) {
+            Minesweeper m = new Minesweeper(16, 60, random.nextLong());
+            m.setFirstClick(Minesweeper.FirstClick.SAFE_OPENING);
+            m.reset();
+            m.reveal(random.nextInt(16), random.nextInt(16));
+            m.undo();
+            Minesweeper copy = m.copy();
+            int x = random.nextInt(16);
+            int y = random.nextInt(16);
+            m.reveal(x, y);
+            copy.reveal(x, y);
+            if(!sameBoard(new MineModel(copy), m)) {
+                fail("A copy's first reveal differed from the original's.");
+                return;
+            }
+            m.reset();
+            copy.reset();
+            if(!sameBoard(new MineModel(copy), m)) {
+                fail("A copy's next board differed from the original's.");
+                return;
+            }
+        }
+
+        // Draw from the generator before the first
+        // snapshot, so seeking resumes from a copy
+        Minesweeper played = new Minesweeper(16, 60, 22L);
+        MineModel model = new MineModel(played);
+        model.setFirstClick(Minesweeper.FirstClick.SAFE_OPENING);
+        model.reveal(3, 3);
+        model.undo();
+        for(int i = 0; i < 300; i++) {
+            model.toggleFlag(0, 0);
+        }
+        model.reveal(12, 12);
+        model.undo();
+        model.reveal(8, 8);
+        Minesweeper beforeReset = played.copy();
+        int resetMove = model.getJournal().getNumMoves();
+        model.reset();
+        model.reveal(5, 9);
+        Replay replay = new Replay(model.getJournal());
+        while(replay.step());
+        replay.seek(280);
+        replay.seek(resetMove);
+        if(!sameBoard(new MineModel(beforeReset), replay.getBoard())) {
+            fail("Seeking across a snapshot gave a different game to playing.");
+        }
+        replay.seek(replay.getNumMoves());
+        if(!sameBoard(model, replay.getBoard())) {
+            fail("Replaying past a reset gave a different game to playing.");
+        }
+    }
+
+    private void testSeek() {
+        // Put a reset on a snapshot boundary,
+        // and seek past it on a fresh replay
+        MineModel model = new MineModel(new Minesweeper(10, 15, 24L));
+        model.reset();
+        while(model.getJournal().getNumMoves() < 256) {
+            model.toggleFlag(0, 0);
+        }
+        model.reset();
+        for(int i = 0; model.getJournal().getNumMoves() < 300; i++) {
+            model.toggleFlag(i % 10, 1);
+        }
+        Replay replay = new Replay(model.getJournal());
+        try {
+            replay.seek(300);
+        } catch(RuntimeException e) {
+            fail("Seeking past a reset at move 256 threw " + e);
+            return;
+        }
+        if(!sameBoard(model, replay.getBoard())) {
+            fail("Seeking past a reset at move 256 gave a different game.");
+        }
+        replay.seek(100);
+        replay.seek(300);
+        if(!sameBoard(model, replay.getBoard())) {
+            fail("Seeking back and past a reset at move 256 gave a different game.");
+        }
+    }
+
+    private void testUndo() {
+        Minesweeper m = new Minesweeper(12, 30, 11L);
+        m.setFirstClick(Minesweeper.FirstClick.SAFE_OPENING);
+        Random random = new Random(11);
+        List<Minesweeper> before = new ArrayList<Minesweeper>();
+        while(m.getState() == GameState.PLAYING) {
+            int x = random.nextInt(12);
+            int y = random.nextInt(12);
+            Minesweeper copy = m.copy();
+            if(random.nextInt(5) == 0) {
+                m.toggleFlag(x, y);
+            } else if(!m.isRevealed(x, y)) {
+                m.reveal(x, y);
+            } else {
+                continue;
+            }
+            before.add(copy);
+        }
+        Minesweeper end = m.copy();
+        for(int i = before.size() - 1; i >= 0; i--) {
+            if(m.undo() == null
+            || !sameBoard(new MineModel(before.get(i)), m)
+            || m.getNumRevealed() != before.get(i).getNumRevealed()) {
+                fail("Undoing move " + i + " didn't restore the board.");
+                return;
+            }
+        }
+        if(m.canUndo() || m.undo() != null) {
+            fail("Undo went past the first move.");
+        }
+        while(m.redo() != null);
+        if(!sameBoard(new MineModel(end), m)) {
+            fail("Redoing every move didn't restore the board.");
+        }
+        m.undo();
+        m.toggleFlag(0, 0);
+        if(m.canRedo()) {
+            fail("A new move didn't clear the redo history.");
+        }
+        m.reset();
+        if(m.canUndo()) {
+            fail("A new board kept the old board's history.");
+        }
+    }
+
+    private void testGameServer() {
+        try {
+            GameServer server = new GameServer(0, 60000);
+            String game = server.handle("NEW 10 15 7");
+            if(!game.startsWith("GAME ")) {
+                fail("NEW replied \"" + game + "\"");
+                return;
+            }
+            String id = game.substring(5);
+            Minesweeper m = new Minesweeper(10, 15, 7L);
+            int cells = m.reveal(4, 4).size();
+            String reply = server.handle("REVEAL " + id + " 4 4");
+            if(!reply.equals("OK " + cells + " " + m.getState())) {
+                fail("REVEAL replied \"" + reply + "\"");
+            }
+            reply = server.handle("STATE " + id);
+            if(!reply.equals("STATE " + m.getState() + " " + m.getNumRevealed() + " 0")) {
+                fail("STATE replied \"" + reply + "\"");
+            }
+            if(!server.handle("REVEAL " + id + " 10 0").startsWith("ERROR")
+            || !server.handle("FLAG 999 0 0").startsWith("ERROR")
+            || !server.handle("NEW 2 5").startsWith("ERROR")) {
+                fail("Bad requests didn't reply with errors.");
+            }
+            server.handle("END " + id);
+            if(server.getNumSessions() != 0) {
+                fail("END didn't end the game.");
+            }
+            server.close();
+
+            server = new GameServer(0, 60000, 1, 1);
+            server.start();
+            if(!server.handle("NEW 10 15").startsWith("GAME ")
+            || !server.handle("NEW 10 15").equals("ERROR Too many games.")) {
+                fail("A GameServer started more games than allowed.");
+            }
+            java.net.Socket first = new java.net.Socket("localhost", server.getPort());
+            java.io.BufferedReader firstIn = new java.io.BufferedReader(
+                new java.io.InputStreamReader(first.getInputStream(), "US-ASCII"));
+            first.getOutputStream().write("STATE 0\n".getBytes("US-ASCII"));
+            firstIn.readLine();
+            java.net.Socket second = new java.net.Socket("localhost", server.getPort());
+            java.io.BufferedReader secondIn = new java.io.BufferedReader(
+                new java.io.InputStreamReader(second.getInputStream(), "US-ASCII"));
+            if(!"ERROR Too many connections.".equals(secondIn.readLine())
+            || secondIn.readLine() != null) {
+                fail("A GameServer served more connections than allowed.");
+            }
+            second.close();
+            first.close();
+            long deadline = System.currentTimeMillis() + 5000;
+            while(server.getNumConnections() != 0
+               && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            if(server.getNumConnections() != 0) {
+                fail("A closed connection still counted against the limit.");
+            }
+            server.close();
+
+            // Two 10x10 boards don't fit in 150 spots,
+            // until the first is ended
+            server = new GameServer(0, 60000, 10, 10, 150);
+            String ended = server.handle("NEW 10 15");
+            if(!ended.startsWith("GAME ")
+            || !server.handle("NEW 10 15").equals("ERROR Too many spots in play.")
+            || server.getNumSpots() != 100) {
+                fail("A GameServer held more spots than allowed.");
+            }
+            server.handle("END " + ended.substring(5));
+            if(server.getNumSpots() != 0
+            || !server.handle("NEW 10 15").startsWith("GAME ")) {
+                fail("Ending a game didn't free its spots.");
+            }
+            server.close();
+        } catch(java.io.IOException e) {
+            fail("Starting a GameServer threw " + e);
+        } catch(InterruptedException e) {
+            fail("Interrupted waiting for a GameServer.");
+        }
+    }
+
+    private void testConcurrentReveals() {
+        final int size = 200;
+        Minesweeper m = new Minesweeper(size, 4000, 13L);
+        m.setFirstClick(Minesweeper.FirstClick.UNSAFE);
+        final Minesweeper expected = m.copy();
+        final ConcurrentMinesweeper game = new ConcurrentMinesweeper(m);
+        final int numThreads = 4;
+        final CellList[] opened = new CellList[numThreads];
+        Thread[] threads = new Thread[numThreads];
+        for(int t = 0; t < numThreads; t++) {
+            final int id = t;
+            threads[t] = new Thread(new Runnable() {
+                public void run() {
+                    opened[id] = new CellList();
+                    // Every thread reveals every safe
+                    // spot, in a different order
+                    for(int n = 0; n < size * size; n++) {
+                        int cell = (id % 2 == 0) ? n : size * size - 1 - n;
+                        int x = cell % size;
+                        int y = cell / size;
+                        if(!expected.isMine(x, y)) {
+                            CellList cells = game.reveal(x, y);
+                            for(int i = 0; i < cells.size(); i++) {
+                                opened[id].add(cells.get(i));
+                            }
+                        }
+                        if(n % 7 == id) {
+                            game.toggleFlag(x, y);
+                            game.toggleFlag(x, y);
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        try {
+            for(Thread thread : threads) {
+                thread.join();
+            }
+        } catch(InterruptedException e) {
+            fail("Interrupted waiting for the players.");
+            return;
+        }
+        boolean[] seen = new boolean[size * size];
+        int total = 0;
+        for(CellList cells : opened) {
+            for(int i = 0; i < cells.size(); i++) {
+                if(seen[cells.get(i)]) {
+                    fail("Spot " + cells.get(i) + " was revealed twice.");
+                    return;
+                }
+                seen[cells.get(i)] = true;
+                total++;
+            }
+        }
+        if(total != size * size - 4000
+        || game.getNumRevealed() != total
+        || game.getState() != GameState.WON
+        || game.getNumFlags() != 0) {
+            fail("Concurrent players corrupted the counters: " + total
+                 + " revealed, " + game.getNumRevealed() + " counted, "
+                 + game.getState() + ", " + game.getNumFlags() + " flags.");
+        }
+    }
+
+    private void testParallelFlood() {
+        java.util.concurrent.ForkJoinPool pool =
+            new java.util.concurrent.ForkJoinPool(4);
+        for(int mines = 0; mines <= 30000; mines += 10000) {
+            Minesweeper sequential = new Minesweeper(1000, mines, 17L);
+            Minesweeper parallel = new Minesweeper(1000, mines, 17L);
+            parallel.setFloodPool(pool);
+            CellList expected = sequential.reveal(500, 500);
+            CellList actual = parallel.reveal(500, 500);
+            if(expected.size() != actual.size()
+            || sequential.getNumRevealed() != parallel.getNumRevealed()) {
+                fail("Parallel flood with " + mines + " mines revealed "
+                     + actual.size() + " spots, not " + expected.size());
+                continue;
+            }
+            int[] a = expected.toArray();
+            int[] b = actual.toArray();
+            Arrays.sort(a);
+            Arrays.sort(b);
+            if(!Arrays.equals(a, b)) {
+                fail("Parallel flood with " + mines + " mines revealed different spots.");
+            }
+        }
+        pool.shutdown();
+    }
+
+    private void testRepaintScheduler() {
+        MineModel model = new MineModel(new Minesweeper(30, 100, 19L));
+        final List<CellList> updates = new ArrayList<CellList>();
+        final boolean[] offEdt = new boolean[1];
+        model.addListener(new RepaintScheduler(new MineModelAdapter() {
+            public void flagChanged(MineModel model, CellList cells) {
+                if(!javax.swing.SwingUtilities.isEventDispatchThread()) {
+                    offEdt[0] = true;
+                }
+                updates.add(cells);
+            }
+        }));
+        // Toggle every flag twice, from this thread
+        for(int n = 0; n < 2; n++) {
+            for(int cell = 0; cell < 900; cell++) {
+                model.toggleFlag(cell % 30, cell / 30);
+            }
+        }
+        try {
+            Thread.sleep(RepaintScheduler.FRAME_MILLIS * 5);
+            javax.swing.SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {}
+            });
+        } catch(Exception e) {
+            fail("Waiting for the scheduler threw " + e);
+            return;
+        }
+        Set<Integer> seen = new HashSet<Integer>();
+        for(CellList cells : updates) {
+            for(int i = 0; i < cells.size(); i++) {
+                seen.add(cells.get(i));
+            }
+        }
+        if(offEdt[0]) {
+            fail("RepaintScheduler updated the view off the EDT.");
+        }
+        if(updates.isEmpty() || updates.size() > 100 || seen.size() != 900) {
+            fail("RepaintScheduler passed on " + updates.size()
+                 + " updates naming " + seen.size() + " of 900 spots.");
+        }
+    }
+
+    private void testMetrics() {
+        Histogram histogram = new Histogram();
+        for(int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        if(histogram.getCount() != 1000
+        || histogram.getMax() != 1000
+        || Math.abs(histogram.getMean() - 500.5) > 1e-9
+        || histogram.getPercentile(50) < 500
+        || histogram.getPercentile(50) > 1000
+        || histogram.getPercentile(100) != 1000) {
+            fail("Histogram of 1 to 1000 gave count " + histogram.getCount()
+                 + ", mean " + histogram.getMean()
+                 + ", median " + histogram.getPercentile(50));
+        }
+        MetricsMXBean bean = Metrics.register();
+        long reveals = bean.getRevealCount();
+        long resets = bean.getResetCount();
+        Minesweeper m = new Minesweeper(10, 10, 23L);
+        m.reveal(0, 0);
+        if(bean.getRevealCount() != reveals + 1
+        || bean.getResetCount() != resets + 1) {
+            fail("Metrics didn't count a reset and a reveal.");
+        }
+        // Both engines record both paths of a reveal
+        long floods = Metrics.FLOOD_SIZE.getCount();
+        new LargeMinesweeper(10, 10, 100, 23L).reveal(0, 0);
+        new LargeMinesweeper(10, 10, 0, 23L).reveal(0, 0);
+        if(Metrics.FLOOD_SIZE.getCount() != floods + 2) {
+            fail("LargeMinesweeper didn't record the size of every reveal.");
+        }
+        try {
+            Object count = java.lang.management.ManagementFactory
+                .getPlatformMBeanServer()
+                .getAttribute(new javax.management.ObjectName(Metrics.OBJECT_NAME),
+                              "RevealCount");
+            if(((Long)count).longValue() != bean.getRevealCount()) {
+                fail("JMX reported a different reveal count.");
+            }
+        } catch(Exception e) {
+            fail("Reading the metrics over JMX threw " + e);
+        }
+    }
+
+    private void testChord() {
+        Minesweeper m = new Minesweeper(16, 40, 13L);
+        m.reveal(8, 8);
+        int size = m.getSize();
+        for(int x = 0; x < size; x++) {
+            for(int y = 0; y < size; y++) {
+                if(!m.isRevealed(x, y) || m.getNumAdjacentMines(x, y) == 0) {
+                    continue;
+                }
+                boolean hidden = false;
+                for(int i = Math.max(0, x - 1); i <= Math.min(size - 1, x + 1); i++) {
+                    for(int j = Math.max(0, y - 1); j <= Math.min(size - 1, y + 1); j++) {
+                        hidden |= !m.isRevealed(i, j) && !m.isMine(i, j);
+                    }
+                }
+                if(!hidden) continue;
+                if(!m.chord(x, y).isEmpty()) {
+                    fail("Chorded " + x + "," + y + " without its flags.");
+                }
+                for(int i = Math.max(0, x - 1); i <= Math.min(size - 1, x + 1); i++) {
+                    for(int j = Math.max(0, y - 1); j <= Math.min(size - 1, y + 1); j++) {
+                        if(m.isMine(i, j) && !m.isFlag(i, j)) {
+                            m.toggleFlag(i, j);
+                        }
+                    }
+                }
+                Minesweeper before = m.copy();
+                if(m.chord(x, y).isEmpty() || m.hasRevealedMine()) {
+                    fail("Chording " + x + "," + y + " didn't reveal safely.");
+                }
+                for(int i = Math.max(0, x - 1); i <= Math.min(size - 1, x + 1); i++) {
+                    for(int j = Math.max(0, y - 1); j <= Math.min(size - 1, y + 1); j++) {
+                        if(!m.isMine(i, j) && !m.isRevealed(i, j)) {
+                            fail("Chording " + x + "," + y + " missed " + i + "," + j);
+                        }
+                    }
+                }
+                m.undo();
+                if(!sameBoard(new MineModel(before), m)) {
+                    fail("Undoing a chord didn't restore the board.");
+                }
+                return;
+            }
+        }
+        fail("Found no spot to chord.");
+    }
+
+    private void testBatch() {
+        MineModel single = new MineModel(new Minesweeper(16, 40, 17L));
+        MineModel batched = new MineModel(new Minesweeper(16, 40, 17L));
+        // Notifications of reveals and of flags
+        final int[] notifications = new int[2];
+        batched.addListener(new MineModelAdapter() {
+            public void cellsRevealed(MineModel model, CellList cells) {
+                notifications[0]++;
+                for(int i = 0; i < cells.size(); i++) {
+                    int x = cells.get(i) % model.getSize();
+                    int y = cells.get(i) / model.getSize();
+                    if(!model.isRevealed(x, y)) {
+                        fail("A batch reported a hidden spot as revealed.");
+                    }
+                }
+            }
+
+            public void flagChanged(MineModel model, CellList cells) {
+                notifications[1]++;
+                Set<Integer> seen = new HashSet<Integer>();
+                for(int i = 0; i < cells.size(); i++) {
+                    if(!seen.add(cells.get(i))) {
+                        fail("A batch named a toggled spot twice.");
+                    }
+                }
+            }
+        });
+        Random random = new Random(17);
+        MineModel.Batch batch = new MineModel.Batch();
+        for(int i = 0; i < 60; i++) {
+            int x = random.nextInt(16);
+            int y = random.nextInt(16);
+            int move = random.nextInt(4);
+            if(move == 0) {
+                single.toggleFlag(x, y);
+                batch.toggleFlag(x, y);
+            } else if(move == 1) {
+                single.chord(x, y);
+                batch.chord(x, y);
+            } else {
+                single.reveal(x, y);
+                batch.reveal(x, y);
+            }
+        }
+        // Toggle one spot there and back
+        for(int i = 0; i < 2; i++) {
+            single.toggleFlag(15, 15);
+            batch.toggleFlag(15, 15);
+        }
+        batched.apply(batch);
+        if(notifications[0] != 1 || notifications[1] != 1) {
+            fail("A batch notified listeners of reveals " + notifications[0] +
+                 " times and of flags " + notifications[1] + " times.");
+        }
+        Replay expected = new Replay(single.getJournal());
+        while(expected.step());
+        if(!sameBoard(batched, expected.getBoard())) {
+            fail("A batch made different moves to making them one by one.");
+        }
+        Replay replay = new Replay(batched.getJournal());
+        replay.step();
+        MineModel replayed = new MineModel(replay.getBoard().copy());
+        notifications[0] = 0;
+        notifications[1] = 0;
+        replayed.addListener(new MineModelAdapter() {
+            public void cellsRevealed(MineModel model, CellList cells) {
+                notifications[0]++;
+            }
+
+            public void flagChanged(MineModel model, CellList cells) {
+                notifications[1]++;
+            }
+        });
+        replay.advance(replayed, replay.getNumMoves());
+        if(notifications[0] != 1 || notifications[1] != 1
+        || !sameBoard(replayed, expected.getBoard())) {
+            fail("Replaying a batch through a model gave a different game.");
+        }
+    }
+
+    private void testAsyncListener() {
+        MineModel model = new MineModel(new Minesweeper(20, 0));
+        final java.util.concurrent.CountDownLatch release =
+            new java.util.concurrent.CountDownLatch(1);
+        final List<String> changes =
+            Collections.synchronizedList(new ArrayList<String>());
+        java.util.concurrent.ExecutorService executor =
+            java.util.concurrent.Executors.newSingleThreadExecutor();
+        model.addListener(new MineModelAdapter() {
+            public void cellsRevealed(MineModel model, CellList cells) {
+                try {
+                    // A slow listener
+                    release.await();
+                } catch(InterruptedException e) {
+                    return;
+                }
+                changes.add("revealed " + cells.size());
+            }
+
+            public void gameOver(MineModel model, GameState state) {
+                changes.add(state.toString());
+            }
+        }, executor);
+        model.reveal(0, 0);
+        if(model.getState() != GameState.WON || !changes.isEmpty()) {
+            fail("An asynchronous listener held up a reveal.");
+        }
+        release.countDown();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, java.util.concurrent.TimeUnit.SECONDS);
+        } catch(InterruptedException e) {
+            fail("Waiting for the listener was interrupted.");
+        }
+        if(!changes.equals(Arrays.asList("revealed 400", GameState.WON.toString()))) {
+            fail("An asynchronous listener was sent " + changes);
+        }
+    }
+
+    private void testExportWhilePlaying() {
+        // With no mines, each reveal floods the whole
+        // board, so a whole snapshot is all hidden
+        // or all revealed
+        final MineModel model = new MineModel(new Minesweeper(300, 0, 30L));
+        Thread player = new Thread(new Runnable() {
+            public void run() {
+                for(int i = 0; i < 100; i++) {
+                    model.reset();
+                    model.reveal(i % 300, 150);
+                }
+            }
+        }, "Test player");
+        player.start();
+        byte[] state = new byte[300 * 300];
+        int torn = 0;
+        while(player.isAlive()) {
+            model.exportState(state);
+            int hidden = 0;
+            for(int i = 0; i < state.length; i++) {
+                if(state[i] == Minesweeper.HIDDEN) {
+                    hidden++;
+                }
+            }
+            if(hidden != 0 && hidden != state.length) {
+                torn++;
+            }
+        }
+        if(torn > 0) {
+            fail(torn + " snapshots taken during play caught a reveal half made.");
+        }
+    }
+
+    private void testExportState() {
+        Minesweeper m = new Minesweeper(30, 150, 29L);
+        Random random = new Random(29);
+        m.reveal(15, 15);
+        for(int i = 0; i < 40; i++) {
+            m.toggleFlag(random.nextInt(30), random.nextInt(30));
+        }
+        byte[] state = new byte[900];
+        m.exportState(state);
+        for(int y = 0; y < 30; y++) {
+            for(int x = 0; x < 30; x++) {
+                int expected;
+                if(!m.isRevealed(x, y)) {
+                    expected = m.isFlag(x, y) ? Minesweeper.FLAGGED : Minesweeper.HIDDEN;
+                } else if(m.isMine(x, y)) {
+                    expected = Minesweeper.REVEALED_MINE;
+                } else {
+                    expected = m.getNumAdjacentMines(x, y);
+                }
+                if(state[x + y*30] != expected) {
+                    fail("Exported " + state[x + y*30] + " for " + x + "," + y
+                         + ", expected " + expected);
+                    return;
+                }
+            }
+        }
+        byte[] part = new byte[4 + 7*5];
+        m.exportState(20, 3, 7, 5, part, 4);
+        java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(7*5 + 1);
+        direct.put((byte)-1);
+        m.exportState(20, 3, 7, 5, direct);
+        for(int j = 0; j < 5; j++) {
+            for(int i = 0; i < 7; i++) {
+                byte expected = state[(20 + i) + (3 + j)*30];
+                if(part[4 + i + j*7] != expected
+                || direct.get(1 + i + j*7) != expected) {
+                    fail("Exported rectangle differed from the whole board.");
+                    return;
+                }
+            }
+        }
+        if(direct.position() != direct.limit()) {
+            fail("Exporting into a buffer left it at " + direct.position());
+        }
+        try {
+            m.exportState(25, 0, 6, 1, part, 0);
+            fail("Exporting off the board didn't throw.");
+        } catch(IndexOutOfBoundsException e) {
+            // Expected
+        }
+        try {
+            m.exportState(0, 0, 7, 6, part, 0);
+            fail("Exporting past the end of the array didn't throw.");
+        } catch(IndexOutOfBoundsException e) {
+            // Expected
+        }
+    }
+
+    private void testLargeBoard() {
+        try {
+            new Minesweeper(50000, 10);
+            fail("A board too big for int indices was allowed.");
+        } catch(IllegalArgumentException e) {
+            // Expected
+        }
+        LargeMinesweeper m = new LargeMinesweeper(300, 200, 6000, 31L);
+        LargeMinesweeper same = new LargeMinesweeper(300, 200, 6000, 31L);
+        int mines = 0;
+        for(int y = 0; y < 200; y++) {
+            for(int x = 0; x < 300; x++) {
+                if(m.isMine(x, y)) mines++;
+                if(m.isMine(x, y) != same.isMine(x, y)) {
+                    fail("The same seed gave different large boards.");
+                    return;
+                }
+            }
+        }
+        if(mines != 6000) {
+            fail("Placed " + mines + " mines on a large board, expected 6000.");
+        }
+        long opened = m.reveal(150, 100);
+        if(m.isMine(150, 100) || opened != m.getNumRevealed()) {
+            fail("The first reveal on a large board wasn't safe.");
+        }
+        long revealed = 0;
+        for(int y = 0; y < 200; y++) {
+            for(int x = 0; x < 300; x++) {
+                if(!m.isRevealed(x, y)) continue;
+                revealed++;
+                if(m.getNumAdjacentMines(x, y) != 0) continue;
+                for(int j = Math.max(0, y - 1); j <= Math.min(199, y + 1); j++) {
+                    for(int i = Math.max(0, x - 1); i <= Math.min(299, x + 1); i++) {
+                        if(!m.isRevealed(i, j)) {
+                            fail("The large flood stopped beside an empty spot.");
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+        if(revealed != opened) {
+            fail("A large reveal opened " + revealed + " spots, reported " + opened);
+        }
+        byte[] state = new byte[300 * 200];
+        m.exportState(0, 0, 300, 200, state, 0);
+        for(int y = 0; y < 200; y++) {
+            for(int x = 0; x < 300; x++) {
+                if(state[x + y*300] == Minesweeper.HIDDEN && m.isRevealed(x, y)
+                || state[x + y*300] < Minesweeper.HIDDEN
+                   && state[x + y*300] != m.getNumAdjacentMines(x, y)) {
+                    fail("A large board exported the wrong state at " + x + "," + y);
+                    return;
+                }
+            }
+        }
+        // Past int indices, in a mapped file
+        // that is only written where it's used
+        java.io.File file = null;
+        try {
+            file = java.io.File.createTempFile("minesweeper", ".board");
+            LargeMinesweeper huge = new LargeMinesweeper(70000, 40000, 10, 37L, file);
+            if(huge.getNumCells() != 2800000000L) {
+                fail("A 70000x40000 board had " + huge.getNumCells() + " spots.");
+            }
+            huge.toggleFlag(69999, 39999);
+            if(!huge.isFlag(69999, 39999) || huge.isFlag(69998, 39999)
+            || huge.getNumFlags() != 1) {
+                fail("Flagging the last spot of a huge board failed.");
+            }
+        } catch(java.io.IOException e) {
+            fail("Mapping a huge board threw " + e);
+        } finally {
+            if(file != null) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private boolean sameBoard(MineModel model, Minesweeper m) {
+        if(model.getSize() != m.getSize()
+        || model.getState() != m.getState()
+        || model.getNumFlags() != m.getNumFlags()) {
+            return false;
+        }
+        for(int x = 0; x < m.getSize(); x++) {
+            for(int y = 0; y < m.getSize(); y++) {
+                if(model.isMine(x, y) != m.isMine(x, y)
+                || model.isRevealed(x, y) != m.isRevealed(x, y)
+                || model.isFlag(x, y) != m.isFlag(x, y)
+                || model.getNumAdjacentMines(x, y) != m.getNumAdjacentMines(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     private void fail(String s) {
         System.out.println("TEST FAILED: " + s);
     }
@@ -9,7 +9,7 @@ public class TestBoardGUI {
         JFrame frame = new JFrame("Testing BoardView");
         MineModel model = new MineModel(new Minesweeper(20, 15));
         BoardView view = new BoardView(model);
-        model.addObserver(view);
+        model.addListener(view);
         frame.add(view);
         frame.pack();
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
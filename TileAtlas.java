@@ -0,0 +1,232 @@
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.concurrent.*;
+import javax.imageio.*;
+public class TileAtlas {
+    // The size of each tile's image
+    public static final int TILE_SIZE = 20;
+    // Tiles 0 to 8 are the numbers
+    public static final int
+        NORMAL = 9,
+        FLAG = 10,
+        MINE = 11;
+    private static final String[] NAMES = {
+        "0", "1", "2", "3", "4", "5", "6", "7", "8",
+        "Normal", "Flag", "Mine"
+    };
+
+    // The decoded images, at their own size
+    private static Future<BufferedImage[]> images;
+    // An atlas of every tile for each size
+    // in device pixels that has been drawn
+    private static ConcurrentHashMap<Integer, BufferedImage> atlases =
+        new ConcurrentHashMap<Integer, BufferedImage>();
+
+    private TileAtlas() {}
+
+    /**
+     * Decodes the tile images and builds the
+     * atlas for the screen's HiDPI scale on a
+     * background thread. Call this at startup,
+     * off the event dispatch thread, so that
+     * the first frame doesn't wait for them.
+     */
+    public static void preload() {
+        startDecoding();
+        final int pixels = (int)Math.round(TILE_SIZE * getScreenScale());
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                getAtlas(pixels);
+            }
+        }, "TileAtlas scaler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the scale from user space to
+     * device pixels of the default screen:
+     * 2 on a typical HiDPI display.
+     *
+     * @return the screen's scale
+     */
+    private static double getScreenScale() {
+        if(GraphicsEnvironment.isHeadless()) {
+            return 1;
+        }
+        return GraphicsEnvironment
+            .getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice()
+            .getDefaultConfiguration()
+            .getDefaultTransform()
+            .getScaleX();
+    }
+
+    /**
+     * Starts decoding the tile images on a
+     * background thread, if that hasn't
+     * been started already.
+     */
+    private static synchronized void startDecoding() {
+        if(images == null) {
+            FutureTask<BufferedImage[]> task =
+                new FutureTask<BufferedImage[]>(new Callable<BufferedImage[]>() {
+                    public BufferedImage[] call() throws IOException {
+                        return decode();
+                    }
+                });
+            images = task;
+            Thread thread = new Thread(task, "TileAtlas loader");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Draws a tile at the given position and
+     * size, in the Graphics object's own units.
+     * The tile is copied from an atlas already
+     * scaled to the number of device pixels it
+     * covers, taking in the display's HiDPI scale,
+     * so nothing is resampled as it is drawn.
+     *
+     * @param g The Graphics object to draw onto
+     * @param tile The tile
+     * @param x The x co-ord of its top left corner
+     * @param y The y co-ord of its top left corner
+     * @param size The width and height to draw it
+     */
+    public static void draw(Graphics g, int tile, int x, int y, int size) {
+        double scale = 1;
+        if(g instanceof Graphics2D) {
+            scale = ((Graphics2D)g).getTransform().getScaleX();
+        }
+        int pixels = Math.max(1, (int)Math.round(size * scale));
+        BufferedImage atlas = getAtlas(pixels);
+        int sx = tile * pixels;
+        g.drawImage(atlas, x, y, x + size, y + size,
+                    sx, 0, sx + pixels, pixels, null);
+    }
+
+    /**
+     * Returns the atlas of every tile at the
+     * given size, in a row, building it the
+     * first time the size is needed.
+     *
+     * @param pixels The tile size in device pixels
+     *
+     * @return the atlas
+     */
+    private static BufferedImage getAtlas(int pixels) {
+        BufferedImage atlas = atlases.get(pixels);
+        if(atlas == null) {
+            atlas = build(pixels);
+            BufferedImage existing = atlases.putIfAbsent(pixels, atlas);
+            if(existing != null) {
+                atlas = existing;
+            }
+        }
+        return atlas;
+    }
+
+    /**
+     * Builds the atlas of every tile at the
+     * given size. It is in the screen's own
+     * format, and the tiles are drawn onto the
+     * black the views draw them over, so the
+     * atlas is opaque and copies straight to
+     * the screen without blending.
+     *
+     * @param pixels The tile size in device pixels
+     *
+     * @return the atlas
+     */
+    private static BufferedImage build(int pixels) {
+        BufferedImage[] sources = getImages();
+        int width = pixels * sources.length;
+        BufferedImage atlas;
+        if(GraphicsEnvironment.isHeadless()) {
+            atlas = new BufferedImage(width, pixels, BufferedImage.TYPE_INT_RGB);
+        } else {
+            atlas = GraphicsEnvironment
+                .getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice()
+                .getDefaultConfiguration()
+                .createCompatibleImage(width, pixels, Transparency.OPAQUE);
+        }
+        Graphics2D g = atlas.createGraphics();
+        try {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, pixels);
+            // Whole multiples keep the pixels sharp,
+            // anything else is smoothed
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                pixels % TILE_SIZE == 0
+                ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR
+                : RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            for(int i = 0; i < sources.length; i++) {
+                g.drawImage(sources[i], i * pixels, 0, pixels, pixels, null);
+            }
+        } finally {
+            g.dispose();
+        }
+        return atlas;
+    }
+
+    /**
+     * Returns the decoded tile images,
+     * waiting for them if need be.
+     *
+     * @return the tile images
+     *
+     * @throws RuntimeException
+     *         if loading an image failed
+     */
+    private static BufferedImage[] getImages() {
+        startDecoding();
+        boolean interrupted = false;
+        try {
+            while(true) {
+                try {
+                    return images.get();
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch(ExecutionException e) {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        } finally {
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Decodes every tile image.
+     *
+     * @return the tile images
+     *
+     * @throws IOException if loading an image failed
+     */
+    private static BufferedImage[] decode() throws IOException {
+        BufferedImage[] decoded = new BufferedImage[NAMES.length];
+        for(int i = 0; i < NAMES.length; i++) {
+            String imageFile = "images/" + NAMES[i] + ".png";
+            InputStream is = TileAtlas.class
+                .getClassLoader()
+                .getResourceAsStream(imageFile);
+            if(is == null) {
+                throw new IOException(
+                    "Failed to load image \"" + imageFile + "\".");
+            }
+            try {
+                decoded[i] = ImageIO.read(is);
+            } finally {
+                is.close();
+            }
+        }
+        return decoded;
+    }
+}